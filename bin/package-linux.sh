@@ -11,7 +11,7 @@ export FX_HOME=
 export FX_LIBS=$FX_HOME/lib
 export FX_JMODS=$FX_HOME/jmods
 
-export MODULES=jdk.jsobject,java.desktop,java.logging,java.prefs,javafx.fxml,javafx.graphics,javafx.swing,javafx.web
+export MODULES=jdk.jfr,jdk.jsobject,java.desktop,java.logging,jdk.management,java.prefs,javafx.fxml,javafx.graphics,javafx.web
 export ICON=./package/linux/epidemy-design.png
 
 if [[ -d $OUTPUT_DIR/$APP_NAME ]]; then
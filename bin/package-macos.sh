@@ -12,7 +12,7 @@ export FX_HOME=/Users/fabriceb/devel/lib/javafx/javafx-sdk-23
 export FX_LIBS=$FX_HOME/lib
 export FX_JMODS=$FX_HOME/jmods
 
-export MODULES=jdk.jsobject,java.desktop,java.logging,java.prefs,javafx.fxml,javafx.graphics,javafx.swing,javafx.web
+export MODULES=jdk.jfr,jdk.jsobject,java.desktop,java.logging,jdk.management,java.prefs,javafx.fxml,javafx.graphics,javafx.web
 export ICON=./package/macosx/epidemy-design.icns
 
 if [[ -d $OUTPUT_DIR/$APP_NAME ]]; then
@@ -14,7 +14,7 @@ set FX_HOME=E:\fabriceb\Devel\Java\lib\JavaFX\javafx-sdk-23
 set FX_LIBS=%FX_HOME%\lib
 set FX_JMODS=%FX_HOME%\jmods
 
-set MODULES=jdk.jsobject,java.desktop,java.logging,java.prefs,javafx.fxml,javafx.graphics,javafx.swing,javafx.web
+set MODULES=jdk.jfr,jdk.jsobject,java.desktop,java.logging,jdk.management,java.prefs,javafx.fxml,javafx.graphics,javafx.web
 set ICON=.\package\windows\epidemy-design.ico
 
 if exist %OUTPUT_DIR%\%APP_NAME% rmdir /s /q %OUTPUT_DIR%\%APP_NAME%
@@ -4,13 +4,15 @@
  http://www.spc.int/
 */
 module epidemy.design {
+    requires jdk.jfr;
     requires jdk.jsobject;
-    requires java.desktop;
     requires java.logging;
+    // Allocation counters of the generation benchmark (com.sun.management.ThreadMXBean).
+    // Not static: a static dependency is not resolved when the application is launched with -m.
+    requires jdk.management;
     requires java.prefs;
     requires javafx.fxml;
     requires javafx.graphics;
-    requires javafx.swing;
     requires javafx.web;
     exports org.spc.health.epidemydesign;
     opens org.spc.health.epidemydesign to javafx.fxml;
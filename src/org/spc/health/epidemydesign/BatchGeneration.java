@@ -0,0 +1,271 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign;
+
+import javafx.application.Platform;
+import org.spc.health.epidemydesign.task.GenerationBenchmark;
+import org.spc.health.epidemydesign.task.GenerationOptions;
+import org.spc.health.epidemydesign.task.GenerationTask;
+import org.spc.health.epidemydesign.task.OutputFormat;
+import org.spc.health.epidemydesign.task.PngFilter;
+import org.spc.health.epidemydesign.task.Theme;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Generates images from the command line.
+ * <br/>No stage, web view or controller is created, only the JavaFX toolkit is started.
+ * <br/>If the Monocle glass platform is available, it is used in headless mode so that no display is required.
+ * <br/>This class does not extend {@code Application}: when it is the main class, the JavaFX launcher does not start the toolkit
+ * before {@link #main(String...)} runs, so the glass platform can still be selected.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class BatchGeneration {
+
+    private static final Logger LOGGER = Logger.getLogger(BatchGeneration.class.getName());
+    /**
+     * Option that triggers the batch generation.
+     */
+    static final String GENERATE_OPTION = "--generate"; // NOI18N.
+    static final int EXIT_SUCCESS = 0;
+    static final int EXIT_FAILURE = 1;
+    static final int EXIT_USAGE = 2;
+    /**
+     * Options that are followed by a value.
+     */
+    private static final Set<String> VALUE_OPTIONS = Set.of("--template", "--fxml", "--css", "--infections", "--states", "--output", "--cache", "--compression", "--png-filter", "--densities", "--output-format", "--themes", "--sizes"); // NOI18N.
+    /**
+     * Options that are not followed by a value.
+     */
+    private static final Set<String> FLAG_OPTIONS = Set.of(GENERATE_OPTION, "--atlas", "--sprite-sheet", "--indexed-color", "--deduplicate", "--benchmark"); // NOI18N.
+    private static final String USAGE = """
+            Usage: java -m epidemy.design/org.spc.health.epidemydesign.BatchGeneration [options]
+              --template <folder>    Folder holding template.fxml, template.css, infections.properties and states.properties
+              --fxml <file>          Template FXML file
+              --css <file>           Template CSS file
+              --themes <list>        Comma separated name=file.css pairs, each theme is written in its own subfolder; replaces --css
+              --infections <file>    Infections definition file
+              --states <file>        States definition file
+              --output <folder>      Output folder (required)
+              --output-format <fmt>  folder, zip or tar; archives are written as icons.zip or icons.tar in the output folder (default: folder)
+              --cache <file>         Render cache file, unchanged images are not rendered again, only used with the folder format
+              --atlas                Render several images in a single snapshot
+              --sprite-sheet         Also generate a sprite sheet with its JSON and CSS index
+              --indexed-color        Write 8-bit indexed PNG with a palette of up to 256 colors, alpha included
+              --deduplicate          Encode identical images once, other files are hard links in a folder (copies if not supported) or TAR, listed in aliases.json in a ZIP
+              --compression <0-9>    PNG compression level, 0 is fastest and 9 gives the smallest files (default: 6)
+              --png-filter <filter>  PNG row filter: none, sub, up, average, paeth or adaptive (default: none)
+              --densities <list>     Comma separated pixel densities, ie: 1,2,3 writes name_state.png, name_state@2x.png and name_state@3x.png (default: 1)
+              --benchmark            Measure each generation stage instead of generating images, no output folder is needed
+              --sizes <list>         Comma separated catalogue sizes measured by the benchmark (default: 100,1000)
+            """; // NOI18N.
+
+    private BatchGeneration() {
+    }
+
+    /**
+     * Runs the batch generation and exits with its status.
+     *
+     * @param args The command line arguments, {@code --generate} is accepted but not required.
+     */
+    public static void main(final String... args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * Tests whether the batch generation was requested on the command line.
+     *
+     * @param args The command line arguments.
+     * @return {@code True} if the batch generation was requested, {@code false} otherwise.
+     */
+    static boolean isRequested(final String... args) {
+        return Arrays.asList(args).contains(GENERATE_OPTION);
+    }
+
+    /**
+     * Runs the batch generation.
+     *
+     * @param args The command line arguments.
+     * @return The exit status.
+     */
+    static int run(final String... args) {
+        final var values = new HashMap<String, String>();
+        final var flags = new HashSet<String>();
+        for (int index = 0; index < args.length; index++) {
+            final var arg = args[index];
+            if (FLAG_OPTIONS.contains(arg)) {
+                flags.add(arg);
+            } else if (VALUE_OPTIONS.contains(arg) && index + 1 < args.length) {
+                values.put(arg, args[++index]);
+            } else {
+                return usage("Invalid argument: %s".formatted(arg)); // NOI18N.
+            }
+        }
+        final var templateFolder = Objects.isNull(values.get("--template")) ? null : new File(values.get("--template")); // NOI18N.
+        final var fxmlFile = resolveFile(values, "--fxml", templateFolder, "template.fxml"); // NOI18N.
+        final var cssFile = resolveFile(values, "--css", templateFolder, "template.css"); // NOI18N.
+        final var infectionsFile = resolveFile(values, "--infections", templateFolder, "infections.properties"); // NOI18N.
+        final var statesFile = resolveFile(values, "--states", templateFolder, "states.properties"); // NOI18N.
+        final var benchmark = flags.contains("--benchmark"); // NOI18N.
+        final var outputPath = values.get("--output"); // NOI18N.
+        if (Objects.isNull(outputPath) && !benchmark) {
+            return usage("Missing output folder."); // NOI18N.
+        }
+        final var themes = new ArrayList<Theme>();
+        if (Objects.nonNull(values.get("--themes"))) { // NOI18N.
+            for (final var value : values.get("--themes").split(",")) { // NOI18N.
+                final var separator = value.indexOf('=');
+                if (separator < 1) {
+                    return usage("Invalid theme: %s".formatted(value)); // NOI18N.
+                }
+                themes.add(new Theme(value.substring(0, separator).trim(), new File(value.substring(separator + 1).trim())));
+            }
+        }
+        final var inputFiles = new ArrayList<>(Arrays.asList(fxmlFile, infectionsFile, statesFile));
+        if (themes.isEmpty() || benchmark) {
+            inputFiles.add(cssFile);
+        }
+        themes.forEach(theme -> inputFiles.add(theme.cssFile()));
+        for (final var file : inputFiles) {
+            if (Objects.isNull(file) || !file.isFile()) {
+                return usage("Missing input file: %s".formatted(file)); // NOI18N.
+            }
+        }
+        final var folder = Objects.isNull(outputPath) ? null : new File(outputPath);
+        if (Objects.nonNull(folder) && !folder.exists() && !folder.mkdirs()) {
+            return usage("Cannot create output folder: %s".formatted(folder)); // NOI18N.
+        }
+        //
+        final var options = new GenerationOptions();
+        final List<Integer> benchmarkSizes;
+        options.setAtlasEnabled(flags.contains("--atlas")); // NOI18N.
+        options.setSpriteSheetEnabled(flags.contains("--sprite-sheet")); // NOI18N.
+        options.setIndexedColorEnabled(flags.contains("--indexed-color")); // NOI18N.
+        options.setDeduplicationEnabled(flags.contains("--deduplicate")); // NOI18N.
+        options.setThemes(themes);
+        Optional.ofNullable(values.get("--cache")) // NOI18N.
+                .map(File::new)
+                .ifPresent(options::setCacheFile);
+        try {
+            Optional.ofNullable(values.get("--compression")) // NOI18N.
+                    .map(Integer::parseInt)
+                    .ifPresent(options::setCompressionLevel);
+            Optional.ofNullable(values.get("--png-filter")) // NOI18N.
+                    .map(value -> PngFilter.valueOf(value.toUpperCase()))
+                    .ifPresent(options::setPngFilter);
+            Optional.ofNullable(values.get("--output-format")) // NOI18N.
+                    .map(value -> OutputFormat.valueOf(value.toUpperCase()))
+                    .ifPresent(options::setOutputFormat);
+            Optional.ofNullable(values.get("--densities")) // NOI18N.
+                    .map(BatchGeneration::parseIntegers)
+                    .ifPresent(options::setDensities);
+            benchmarkSizes = parseIntegers(values.getOrDefault("--sizes", "100,1000")); // NOI18N.
+        } catch (IllegalArgumentException ex) {
+            return usage(ex.getMessage());
+        }
+        try {
+            final var states = CatalogueFiles.readStates(statesFile);
+            final var infections = CatalogueFiles.readInfections(infectionsFile, states);
+            startToolkit();
+            try {
+                if (benchmark) {
+                    new GenerationBenchmark(fxmlFile, cssFile, options).run(infections, benchmarkSizes, System.out);
+                    return EXIT_SUCCESS;
+                }
+                final var task = new GenerationTask(folder, infections, fxmlFile, cssFile, options);
+                final var start = System.currentTimeMillis();
+                task.run();
+                task.get();
+                LOGGER.log(Level.INFO, "Output generation succeeded in {0} ms.", System.currentTimeMillis() - start); // NOI18N.
+                return EXIT_SUCCESS;
+            } finally {
+                Platform.exit();
+            }
+        } catch (ExecutionException ex) {
+            final var cause = ex.getCause();
+            LOGGER.log(Level.SEVERE, cause.getMessage(), cause);
+        } catch (Exception ex) {
+            LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
+        }
+        return EXIT_FAILURE;
+    }
+
+    /**
+     * Resolves an input file from the command line.
+     *
+     * @param values         The option values.
+     * @param option         The option.
+     * @param templateFolder The template folder, may be {@code null}.
+     * @param defaultName    Name of the file in the template folder.
+     * @return A {@code File} instance, or {@code null} if the file was not specified.
+     */
+    private static File resolveFile(final Map<String, String> values, final String option, final File templateFolder, final String defaultName) {
+        final var path = values.get(option);
+        if (Objects.nonNull(path)) {
+            return new File(path);
+        }
+        return Objects.isNull(templateFolder) ? null : new File(templateFolder, defaultName);
+    }
+
+    /**
+     * Starts the JavaFX toolkit.
+     * <br/>The toolkit is already running when the generation is requested through {@link EpidemyDesign}, since the JavaFX launcher
+     * starts it before invoking the main method of an application; it is then used as is.
+     *
+     * @throws InterruptedException If interrupted while waiting for the toolkit to start.
+     */
+    private static void startToolkit() throws InterruptedException {
+        if (Objects.isNull(System.getProperty("glass.platform")) && isMonocleAvailable()) { // NOI18N.
+            System.setProperty("glass.platform", "Monocle"); // NOI18N.
+            System.setProperty("monocle.platform", "Headless"); // NOI18N.
+            System.setProperty("prism.order", "sw"); // NOI18N.
+        }
+        final var latch = new CountDownLatch(1);
+        try {
+            Platform.startup(latch::countDown);
+        } catch (IllegalStateException ex) {
+            LOGGER.log(Level.FINE, "JavaFX toolkit already running."); // NOI18N.
+            return;
+        }
+        latch.await();
+    }
+
+    private static boolean isMonocleAvailable() {
+        try {
+            Class.forName("com.sun.glass.ui.monocle.MonoclePlatformFactory"); // NOI18N.
+            return true;
+        } catch (ClassNotFoundException ex) {
+            return false;
+        }
+    }
+
+    private static List<Integer> parseIntegers(final String value) {
+        return Arrays.stream(value.split(",")) // NOI18N.
+                .map(String::trim)
+                .map(Integer::valueOf)
+                .toList();
+    }
+
+    private static int usage(final String message) {
+        System.err.println(message);
+        System.err.print(USAGE);
+        return EXIT_USAGE;
+    }
+}
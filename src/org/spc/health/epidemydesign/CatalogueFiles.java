@@ -0,0 +1,118 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign;
+
+import javafx.scene.paint.Color;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * Reads states and infections definition files.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+final class CatalogueFiles {
+
+    private CatalogueFiles() {
+    }
+
+    /**
+     * Reads states from a file.
+     *
+     * @param file The source file.
+     * @return A sorted {@code List<State>} instance, never {@code null}.
+     * @throws IOException In case of IO error.
+     */
+    static List<State> readStates(final File file) throws IOException {
+        final var fileContent = readProperties(file);
+        final var values = new ArrayList<>(fileContent.stringPropertyNames());
+        Collections.sort(values);
+        final var result = new ArrayList<State>(values.size());
+        values.stream()
+                .map(value -> {
+                    final var color = fileContent.getProperty(value);
+                    return createState(value, color);
+                })
+                .forEach(result::add);
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Reads infections from a file.
+     *
+     * @param file   The source file.
+     * @param states The known states, states referenced by infections and not found in this list are added to it.
+     * @return A sorted {@code List<Infection>} instance, never {@code null}.
+     * @throws IOException In case of IO error.
+     */
+    static List<Infection> readInfections(final File file, final List<State> states) throws IOException {
+        final var fileContent = readProperties(file);
+        final var values = new ArrayList<>(fileContent.stringPropertyNames());
+        Collections.sort(values);
+        final var result = new ArrayList<Infection>(values.size());
+        // Index of the states by name, states that are not known yet are added to the list at the end.
+        final var stateIndex = new HashMap<String, State>();
+        states.forEach(state -> stateIndex.put(state.getName(), state));
+        final var newStates = new ArrayList<State>();
+        values.forEach(value -> {
+            final var name = value.replaceAll("_", " "); // NOI18N.
+            final var line = fileContent.getProperty(value);
+            final var lineTokens = line.split("\\|"); // NOI18N.
+            final var fileName = (line.contains("|") || lineTokens.length > 1) ? lineTokens[0] : null; // NOI18N.
+            final var infection = new Infection(name, fileName);
+            final var statesLine = (lineTokens.length == 1) ? (line.contains("|") ? "" : lineTokens[0]) : lineTokens[1]; // NOI18N.
+            final var tokens = statesLine.split("\\s+"); // NOI18N.
+            for (final var token : tokens) {
+                final var stateName = token.trim();
+                if (stateName.isEmpty()) {
+                    continue;
+                }
+                final var state = stateIndex.computeIfAbsent(stateName, _ -> {
+                    final var newState = createState(stateName, null);
+                    newStates.add(newState);
+                    return newState;
+                });
+                infection.addState(state);
+            }
+            result.add(infection);
+        });
+        if (!newStates.isEmpty()) {
+            states.addAll(newStates);
+            Collections.sort(states);
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Creates a new state.
+     *
+     * @param name      The name of the state.
+     * @param colorName The web color of the state, may be {@code null}.
+     * @return A {@code State} instance, never {@code null}.
+     */
+    static State createState(final String name, final String colorName) {
+        final var color = (Objects.isNull(colorName) || colorName.isBlank()) ? Color.BLACK : Color.valueOf(colorName);
+        return new State(name, color);
+    }
+
+    private static Properties readProperties(final File file) throws IOException {
+        final var result = new Properties();
+        try (final var input = new FileInputStream(file)) {
+            result.load(input);
+        }
+        return result;
+    }
+}
@@ -26,13 +26,14 @@ import javafx.stage.Stage;
 public final class EpidemyDesign extends Application {
 
     private Stage stage;
+    private MainUIController mainUIController;
 
     @Override
     public void start(final Stage primaryStage) throws IOException {
         final var fxmlURL = getClass().getResource("MainUI.fxml"); // NOI18N.
         final var fxmlLoader = new FXMLLoader(fxmlURL, I18N.getResourceBundle());
         final var mainUI = fxmlLoader.<Node>load();
-        final var mainUIController = fxmlLoader.<MainUIController>getController();
+        mainUIController = fxmlLoader.<MainUIController>getController();
         mainUIController.setApplication(this);
         final var root = new StackPane(mainUI);
         final var scene = new Scene(root);
@@ -53,6 +54,12 @@ public final class EpidemyDesign extends Application {
         stage.heightProperty().addListener(stagePropertiesInvalidationListener);
     }
 
+    @Override
+    public void stop() {
+        Optional.ofNullable(mainUIController)
+                .ifPresent(MainUIController::dispose);
+    }
+
     private final InvalidationListener stagePropertiesInvalidationListener = _ -> Platform.runLater(() -> {
         Settings.getPrefs().putDouble("stage.x", stage.getX());
         Settings.getPrefs().putDouble("stage.y", stage.getY());
@@ -64,6 +71,9 @@ public final class EpidemyDesign extends Application {
      * @param args the command line arguments
      */
     public static void main(String... args) {
+        if (BatchGeneration.isRequested(args)) {
+            System.exit(BatchGeneration.run(args));
+        }
         launch(args);
     }
 
@@ -5,16 +5,22 @@
 */
 package org.spc.health.epidemydesign;
 
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
-import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
+import javafx.collections.ObservableListBase;
 
 /**
  * Infections.
  * <br/>User can add new ones, cannot be an enum.
+ * <br/>To keep large catalogues small, values are stored in plain fields and states in a bit set of state ids;
+ * properties and the observable state list are only created when requested, usually for the rows displayed by the UI.
  * @author Fabrice Bouyé (fabriceb@spc.int)
  */
 public final class Infection implements Comparable<Infection> {
@@ -57,37 +63,364 @@ public final class Infection implements Comparable<Infection> {
         return id.compareTo(otherInfection.id);
     }
     ////////////////////////////////////////////////////////////////////////////
-    private final StringProperty name = new SimpleStringProperty(this, "name"); // NOI18N.
+    /**
+     * Invoked whenever the name, the file name or the states of this infection change.
+     */
+    private Runnable onChange;
+
+    public Runnable getOnChange() {
+        return onChange;
+    }
+
+    public void setOnChange(final Runnable value) {
+        onChange = value;
+    }
+
+    private void notifyChange() {
+        if (Objects.nonNull(onChange)) {
+            onChange.run();
+        }
+    }
+
+    private String nameValue;
+    private StringProperty name;
 
     public String getName() {
-        return name.get();
+        return Objects.isNull(name) ? nameValue : name.get();
     }
 
     public void setName(String value) {
-        name.set(value);
+        if (Objects.isNull(name)) {
+            nameValue = value;
+            notifyChange();
+        } else {
+            name.set(value);
+        }
     }
 
     public StringProperty nameProperty() {
+        if (Objects.isNull(name)) {
+            name = new SimpleStringProperty(this, "name", nameValue) { // NOI18N.
+                @Override
+                protected void invalidated() {
+                    notifyChange();
+                }
+            };
+            nameValue = null;
+        }
         return name;
     }
 
-    private final StringProperty fileName = new SimpleStringProperty(this, "fileName"); // NOI18N.
+    private String fileNameValue;
+    private StringProperty fileName;
 
     public String getFileName() {
-        return fileName.get();
+        return Objects.isNull(fileName) ? fileNameValue : fileName.get();
     }
 
     public void setFileName(final String value) {
-        fileName.set(value);
+        if (Objects.isNull(fileName)) {
+            fileNameValue = value;
+            notifyChange();
+        } else {
+            fileName.set(value);
+        }
     }
 
     public StringProperty fileNameProperty() {
+        if (Objects.isNull(fileName)) {
+            fileName = new SimpleStringProperty(this, "fileName", fileNameValue) { // NOI18N.
+                @Override
+                protected void invalidated() {
+                    notifyChange();
+                }
+            };
+            fileNameValue = null;
+        }
         return fileName;
     }
 
-    private final ObservableList<State> states = FXCollections.observableList(new LinkedList<>());
+    /**
+     * Ids of the states of this infection.
+     */
+    private final BitSet stateIds = new BitSet();
+    private StateList states;
 
+    /**
+     * Gets the states of this infection.
+     * <br/>States are kept in the order of their ids and are not duplicated, adding a state that is already there does nothing.
+     * @return An {@code ObservableList<State>} instance, never {@code null}.
+     */
     public ObservableList<State> getStates() {
+        if (Objects.isNull(states)) {
+            states = new StateList();
+        }
         return states;
     }
+
+    /**
+     * Tests whether this infection has a given state, without creating the state list.
+     * @param state The state.
+     * @return {@code True} if this infection has the state, {@code false} otherwise.
+     */
+    public boolean hasState(final State state) {
+        return stateIds.get(state.getIndex());
+    }
+
+    /**
+     * Adds a state to this infection, without creating the state list.
+     * @param state The state.
+     */
+    public void addState(final State state) {
+        if (Objects.nonNull(states)) {
+            states.add(state);
+        } else if (!stateIds.get(state.getIndex())) {
+            stateIds.set(state.getIndex());
+            notifyChange();
+        }
+    }
+
+    /**
+     * Removes a state from this infection, without creating the state list.
+     * @param state The state.
+     */
+    public void removeState(final State state) {
+        if (Objects.nonNull(states)) {
+            states.remove(state);
+        } else if (stateIds.get(state.getIndex())) {
+            stateIds.clear(state.getIndex());
+            notifyChange();
+        }
+    }
+
+    /**
+     * Visits the states of this infection, without creating the state list.
+     * @param action The action invoked for each state.
+     */
+    public void forEachState(final Consumer<? super State> action) {
+        for (int index = stateIds.nextSetBit(0); index >= 0; index = stateIds.nextSetBit(index + 1)) {
+            action.accept(StateIndex.get(index));
+        }
+    }
+
+    /**
+     * Observable view over the state ids of this infection.
+     * <br/>Nested changes are reported as a single change, after which the change observer of the infection is invoked once.
+     * @author Fabrice Bouyé (fabriceb@spc.int)
+     */
+    private final class StateList extends ObservableListBase<State> {
+
+        /**
+         * Ids in list order, rebuilt after each change.
+         */
+        private int[] ids;
+        private int depth;
+        private boolean changed;
+
+        private int[] ids() {
+            if (Objects.isNull(ids)) {
+                ids = stateIds.stream().toArray();
+            }
+            return ids;
+        }
+
+        private void openChange() {
+            depth++;
+            beginChange();
+        }
+
+        private void closeChange() {
+            endChange();
+            depth--;
+            if (depth == 0 && changed) {
+                changed = false;
+                notifyChange();
+            }
+        }
+
+        @Override
+        public State get(final int index) {
+            return StateIndex.get(ids()[index]);
+        }
+
+        @Override
+        public int size() {
+            return ids().length;
+        }
+
+        @Override
+        public boolean contains(final Object object) {
+            return object instanceof State state && hasState(state);
+        }
+
+        @Override
+        public int indexOf(final Object object) {
+            return (object instanceof State state && hasState(state)) ? Arrays.binarySearch(ids(), state.getIndex()) : -1;
+        }
+
+        @Override
+        public int lastIndexOf(final Object object) {
+            return indexOf(object);
+        }
+
+        @Override
+        public boolean add(final State state) {
+            Objects.requireNonNull(state);
+            if (hasState(state)) {
+                return false;
+            }
+            openChange();
+            try {
+                stateIds.set(state.getIndex());
+                ids = null;
+                final var position = indexOf(state);
+                nextAdd(position, position + 1);
+                changed = true;
+            } finally {
+                closeChange();
+            }
+            return true;
+        }
+
+        /**
+         * States are kept in the order of their ids, the index is ignored.
+         */
+        @Override
+        public void add(final int index, final State state) {
+            add(state);
+        }
+
+        @Override
+        public State remove(final int index) {
+            final var state = get(index);
+            openChange();
+            try {
+                stateIds.clear(state.getIndex());
+                ids = null;
+                nextRemove(index, state);
+                changed = true;
+            } finally {
+                closeChange();
+            }
+            return state;
+        }
+
+        @Override
+        public boolean remove(final Object object) {
+            final var index = indexOf(object);
+            if (index < 0) {
+                return false;
+            }
+            remove(index);
+            return true;
+        }
+
+        /**
+         * States are kept in the order of their ids, this removes the state at the index and adds the given state.
+         */
+        @Override
+        public State set(final int index, final State state) {
+            final var result = get(index);
+            if (!result.equals(state)) {
+                openChange();
+                try {
+                    remove(index);
+                    add(state);
+                } finally {
+                    closeChange();
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public boolean addAll(final Collection<? extends State> collection) {
+            var result = false;
+            openChange();
+            try {
+                for (final var state : collection) {
+                    result |= add(state);
+                }
+            } finally {
+                closeChange();
+            }
+            return result;
+        }
+
+        @Override
+        public boolean addAll(final State... elements) {
+            return addAll(Arrays.asList(elements));
+        }
+
+        @Override
+        public boolean setAll(final State... elements) {
+            return setAll(Arrays.asList(elements));
+        }
+
+        @Override
+        public boolean setAll(final Collection<? extends State> collection) {
+            openChange();
+            try {
+                clear();
+                addAll(collection);
+            } finally {
+                closeChange();
+            }
+            return true;
+        }
+
+        @Override
+        public boolean removeAll(final State... elements) {
+            return removeAll(Arrays.asList(elements));
+        }
+
+        @Override
+        public boolean retainAll(final State... elements) {
+            return retainAll(Arrays.asList(elements));
+        }
+
+        @Override
+        public void remove(final int from, final int to) {
+            openChange();
+            try {
+                for (int index = to - 1; index >= from; index--) {
+                    remove(index);
+                }
+            } finally {
+                closeChange();
+            }
+        }
+
+        @Override
+        public void clear() {
+            remove(0, size());
+        }
+
+        @Override
+        public boolean removeAll(final Collection<?> collection) {
+            return removeIf(collection::contains);
+        }
+
+        @Override
+        public boolean retainAll(final Collection<?> collection) {
+            return removeIf(state -> !collection.contains(state));
+        }
+
+        @Override
+        public boolean removeIf(final Predicate<? super State> filter) {
+            var result = false;
+            openChange();
+            try {
+                for (int index = size() - 1; index >= 0; index--) {
+                    if (filter.test(get(index))) {
+                        remove(index);
+                        result = true;
+                    }
+                }
+            } finally {
+                closeChange();
+            }
+            return result;
+        }
+    }
 }
@@ -9,7 +9,6 @@ import javafx.animation.PauseTransition;
 import javafx.application.Platform;
 import javafx.beans.InvalidationListener;
 import javafx.beans.Observable;
-import javafx.beans.binding.BooleanBinding;
 import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ListChangeListener.Change;
@@ -22,24 +21,29 @@ import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
 import javafx.scene.Group;
+import javafx.scene.control.Button;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Label;
 import javafx.scene.control.MenuItem;
 import javafx.scene.control.SplitMenuButton;
+import javafx.scene.control.Tab;
 import javafx.scene.layout.*;
-import javafx.scene.paint.Color;
 import javafx.stage.FileChooser;
 import javafx.util.Duration;
 import org.spc.health.epidemydesign.control.codeeditor.CodeEditor;
 import org.spc.health.epidemydesign.control.generatepane.GeneratePaneController;
 import org.spc.health.epidemydesign.control.infectioneditor.InfectionEditorController;
 import org.spc.health.epidemydesign.control.stateeditor.StateEditorController;
+import org.spc.health.epidemydesign.task.GenerationOptions;
 import org.spc.health.epidemydesign.task.GenerationTask;
 
 import java.io.*;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.file.Files;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -58,76 +62,126 @@ public final class MainUIController extends ControllerBase implements Initializa
     private final File cssFile;
     private final File infectionsFile;
     private final File statesFile;
-    private final ObservableList<State> states = FXCollections.observableList(new LinkedList<>());
-    private final ObservableList<Infection> infections = FXCollections.observableList(new LinkedList<>());
+    private final ObservableList<State> states = FXCollections.observableList(new ArrayList<>());
+    private final ObservableList<Infection> infections = FXCollections.observableList(new ArrayList<>());
     /**
-     * Called whenever the state list of an infection changes content.
+     * Batches changes made to the states and infections, observers below are invoked once per batch.
      */
-    private final ListChangeListener<State> invalidationStateListChangeListener = _ -> Platform.runLater(() -> {
-        try {
-            saveInfectionsToTemplate();
-        } catch (IOException ex) {
-            LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
-        }
-    });
+    private final ModelChanges modelChanges = new ModelChanges();
+    /**
+     * Invoked whenever the state list changes.
+     */
+    private final Runnable statesObserver = () -> {
+        saveStatesToTemplate();
+        Platform.runLater(this::populatePreviewPane);
+    };
+    /**
+     * Invoked whenever the infection list changes.
+     */
+    private final Runnable infectionListObserver = () -> {
+        final var comboList = new LinkedList<Infection>();
+        comboList.add(null);
+        comboList.addAll(infections);
+        this.previewCombo.getItems().setAll(comboList);
+        comboList.clear();
+    };
+    /**
+     * Invoked whenever the values or the states of an infection change.
+     */
+    private final Runnable infectionValuesObserver = () -> {
+        saveInfectionsToTemplate();
+        changePreviewLabels();
+    };
+    /**
+     * Called whenever the values or the states of an infection change.
+     */
+    private final Runnable infectionChangeHandler = () -> modelChanges.notify(this.infectionValuesObserver);
     private final Duration timerDuration = Duration.millis(750);
     @FXML
+    private Tab cssTab;
+    @FXML
+    private Tab fxmlTab;
+    @FXML
     private VBox cssContent;
     @FXML
     private VBox fxmlContent;
     @FXML
     private VBox previewPane;
-    private final ListChangeListener<State> statesListChangeListener = (final Change<? extends State> _) -> Platform.runLater(() -> {
-        try {
-            saveStatesToTemplate();
-            populatePreviewPane();
-        } catch (IOException ex) {
-            LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
-        }
-    });
+    private final ListChangeListener<State> statesListChangeListener = (final Change<? extends State> _) -> modelChanges.notify(this.statesObserver);
     @FXML
     private ComboBox<Infection> previewCombo;
     ////////////////////////////////////////////////////////////////////////////
-    private final ListChangeListener<Infection> infectionsListChangeListener = (final Change<? extends Infection> _) -> {
-        final var comboList = new LinkedList<Infection>();
-        comboList.add(null);
-        comboList.addAll(infections);
-        previewCombo.getItems().setAll(comboList);
-        comboList.clear();
-    };
+    private final ListChangeListener<Infection> infectionsListChangeListener = (final Change<? extends Infection> _) -> modelChanges.notify(this.infectionListObserver);
     /**
      * Called whenever selection in the preview combo changes.
      */
     private final InvalidationListener previewSelectionInvalidationListener = (Observable _) -> Platform.runLater(this::changePreviewLabels);
-    /**
-     * Called whenever one of the text values of an infection changes.
-     */
-    private final InvalidationListener infectionValueInvalidationListener = (Observable _) -> Platform.runLater(() -> {
-        try {
-            saveInfectionsToTemplate();
-            changePreviewLabels();
-        } catch (IOException ex) {
-            LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
-        }
-    });
+    @FXML
+    private Button saveCSSButton;
     @FXML
     private SplitMenuButton loadCSSButton;
     @FXML
+    private Button defaultCSSButton;
+    @FXML
+    private Button saveFXMLButton;
+    @FXML
     private SplitMenuButton loadFXMLButton;
     @FXML
+    private Button fxmlDefaultButton;
+    @FXML
+    private VBox stateEditor;
+    @FXML
     private StateEditorController stateEditorController;
     @FXML
+    private VBox infectionEditor;
+    @FXML
     private InfectionEditorController infectionEditorController;
     @FXML
+    private HBox generatePane;
+    @FXML
     private GeneratePaneController generatePaneController;
+    /**
+     * The CSS editor, {@code null} until its tab is first shown.
+     */
     private CodeEditor cssEditor;
+    /**
+     * The FXML editor, {@code null} until its tab is first shown.
+     */
     private CodeEditor fxmlEditor;
     /**
-     * This binding is used to control whenever the code editor has been initialized.
-     * <br/>It's a member to avoid early GC.
+     * Text of the CSS template, used until the CSS editor is ready; {@code null} until the template is loaded.
+     */
+    private String cssTemplateText;
+    /**
+     * Text of the FXML template, used until the FXML editor is ready; {@code null} until the template is loaded.
      */
-    private BooleanBinding codeEditorInitialized;
+    private String fxmlTemplateText;
 
+    /**
+     * Saves the template files in the background.
+     */
+    private final WriteBehindStore templateStore = new WriteBehindStore();
+    /**
+     * Checks the edited template in the background before the preview is reloaded.
+     */
+    private TemplateValidationService validationService;
+    /**
+     * Result of the validation being applied, its node is given to the preview if the FXML text changed.
+     */
+    private TemplateValidationService.Result validatedTemplate;
+    /**
+     * Preview thumbnails, by state name.
+     */
+    private final Map<String, PreviewThumbnail> previewThumbnails = new LinkedHashMap<>();
+    /**
+     * FXML text of the current preview thumbnails.
+     */
+    private String previewFXMLText;
+    /**
+     * CSS text of the current preview stylesheet.
+     */
+    private String previewCSSText;
+    private String previewStylesheet;
     ////////////////////////////////////////////////////////////////////////////    
     ////////////////////////////////////////////////////////////////////////////
     private PauseTransition waitTimer = null;
@@ -142,43 +196,23 @@ public final class MainUIController extends ControllerBase implements Initializa
      */
     private Service<Void> generationService;
 
-    public MainUIController() throws IOException {
+    /**
+     * Creates a new instance.
+     * <br/>No file is accessed here, the template folder is prepared and loaded in the background once the UI is initialized.
+     */
+    public MainUIController() {
         homeFolder = new File(System.getProperty("user.home"), ".EpidemyDesign"); // NOI18N.
-        if (!homeFolder.exists()) {
-            homeFolder.mkdirs();
-        }
         templateFolder = new File(homeFolder, "template"); // NOI18N.
-        if (!templateFolder.exists()) {
-            templateFolder.mkdirs();
-        }
         fxmlFile = new File(templateFolder, "template.fxml"); // NOI18N.
-        if (!fxmlFile.exists()) {
-            exportFXMLFromSource();
-        }
         cssFile = new File(templateFolder, "template.css"); // NOI18N.
-        if (!cssFile.exists()) {
-            exportCSSFromSource();
-        }
         infectionsFile = new File(templateFolder, "infections.properties"); // NOI18N.
-        if (!infectionsFile.exists()) {
-            exportInfectionsFromSource();
-        }
         statesFile = new File(templateFolder, "states.properties"); // NOI18N.
-        if (!statesFile.exists()) {
-            exportStatesFromSource();
-        }
     }
 
     @Override
     public void initialize(URL url, ResourceBundle rb) {
         infections.addListener(infectionsListChangeListener);
         states.addListener(statesListChangeListener);
-        try {
-            reloadStatesFromTemplate();
-            reloadInfectionsFromTemplate();
-        } catch (IOException ex) {
-            LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
-        }
         //
         stateEditorController.applicationProperty().bind(applicationProperty());
         stateEditorController.setStates(states);
@@ -194,8 +228,10 @@ public final class MainUIController extends ControllerBase implements Initializa
         });
         stateEditorController.setOnSelectFile((final File file) -> {
             try {
-                clearStates();
-                reloadStatesFromFile(file);
+                modelChanges.batch(() -> {
+                    clearStates();
+                    reloadStatesFromFile(file);
+                });
             } catch (IOException ex) {
                 LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
             }
@@ -204,6 +240,7 @@ public final class MainUIController extends ControllerBase implements Initializa
         infectionEditorController.applicationProperty().bind(applicationProperty());
         infectionEditorController.setInfections(infections);
         infectionEditorController.setStates(states);
+        infectionEditorController.setModelChanges(modelChanges);
         infectionEditorController.setOnSave(_ -> saveInfectionsMayBe());
         infectionEditorController.setOnLoad(_ -> importInfectionsMayBe());
         infectionEditorController.setOnDefault(_ -> {
@@ -216,8 +253,10 @@ public final class MainUIController extends ControllerBase implements Initializa
         });
         infectionEditorController.setOnSelectFile(file -> {
             try {
-                clearInfections();
-                reloadInfectionsFromFile(file);
+                modelChanges.batch(() -> {
+                    clearInfections();
+                    reloadInfectionsFromFile(file);
+                });
             } catch (IOException ex) {
                 LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
             }
@@ -231,104 +270,200 @@ public final class MainUIController extends ControllerBase implements Initializa
         previewCombo.setButtonCell(new InfectionListCell());
         previewCombo.setCellFactory(_ -> new InfectionListCell());
         previewCombo.setValue(null);
-        // CSS editor.
-        cssEditor = new CodeEditor();
-        VBox.setVgrow(cssEditor, Priority.ALWAYS);
-        cssContent.getChildren().add(cssEditor);
-        // FXML editor.
-        fxmlEditor = new CodeEditor();
-        VBox.setVgrow(fxmlEditor, Priority.ALWAYS);
-        fxmlContent.getChildren().add(fxmlEditor);
+        // Template buttons are enabled once the template is loaded, save buttons once their editor is ready.
+        List.of(saveCSSButton, loadCSSButton, defaultCSSButton, saveFXMLButton, loadFXMLButton, fxmlDefaultButton)
+                .forEach(button -> button.setDisable(true));
+        // A catalogue loaded meanwhile would be replaced by the template, and the generation needs the template files.
+        List.of(stateEditor, infectionEditor, generatePane)
+                .forEach(node -> node.setDisable(true));
         //
-        codeEditorInitialized = new BooleanBinding() {
-            {
-                bind(cssEditor.initializedProperty(), fxmlEditor.initializedProperty());
-            }
+        startTemplateLoading();
+    }
 
+    /**
+     * Prepares and loads the template in the background.
+     * <br/>Once loaded, the catalogue is displayed, the preview is populated and the code editors are created when their tab is first shown.
+     */
+    private void startTemplateLoading() {
+        final var task = new Task<TemplateContent>() {
             @Override
-            public void dispose() {
-                unbind(cssEditor.initializedProperty(), fxmlEditor.initializedProperty());
+            protected TemplateContent call() throws Exception {
+                prepareTemplateFolder();
+                final var loadedStates = new ArrayList<>(CatalogueFiles.readStates(statesFile));
+                final var loadedInfections = CatalogueFiles.readInfections(infectionsFile, loadedStates);
+                return new TemplateContent(loadedStates, loadedInfections, readTemplateText(cssFile), readTemplateText(fxmlFile));
+            }
+        };
+        task.setOnSucceeded(_ -> {
+            final var content = task.getValue();
+            modelChanges.batch(() -> {
+                clearStates();
+                clearInfections();
+                states.setAll(content.states());
+                content.infections().forEach(infection -> infection.setOnChange(infectionChangeHandler));
+                infections.setAll(content.infections());
+            });
+            cssTemplateText = content.cssText();
+            fxmlTemplateText = content.fxmlText();
+            populatePreviewPane();
+            changePreviewLabels();
+            List.of(loadCSSButton, defaultCSSButton, loadFXMLButton, fxmlDefaultButton, stateEditor, infectionEditor, generatePane)
+                    .forEach(node -> node.setDisable(false));
+            runOnFirstShow(cssTab, () -> cssEditor = createEditor(cssContent, CodeEditor.Mode.CSS, () -> cssTemplateText, saveCSSButton));
+            runOnFirstShow(fxmlTab, () -> fxmlEditor = createEditor(fxmlContent, CodeEditor.Mode.XML, () -> fxmlTemplateText, saveFXMLButton));
+        });
+        task.setOnFailed(_ -> {
+            final var ex = task.getException();
+            LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
+            // The editors are not created without a template, the error is displayed in their place.
+            final var message = String.format(I18N.getString("template-load-error.template"), ex.getMessage()); // NOI18N.
+            for (final var content : List.of(cssContent, fxmlContent)) {
+                final var label = new Label(message);
+                label.getStyleClass().add("template-error-label"); // NOI18N.
+                label.setMaxWidth(Double.MAX_VALUE);
+                content.getChildren().add(label);
             }
+        });
+        final var thread = new Thread(task, "template-loading"); // NOI18N.
+        thread.setDaemon(true);
+        thread.start();
+    }
 
+    /**
+     * Creates the template folder and copies the default template files that are missing.
+     *
+     * @throws IOException In case of IO error.
+     */
+    private void prepareTemplateFolder() throws IOException {
+        if (!templateFolder.exists()) {
+            templateFolder.mkdirs();
+        }
+        if (!fxmlFile.exists()) {
+            exportFXMLFromSource();
+        }
+        if (!cssFile.exists()) {
+            exportCSSFromSource();
+        }
+        if (!infectionsFile.exists()) {
+            exportInfectionsFromSource();
+        }
+        if (!statesFile.exists()) {
+            exportStatesFromSource();
+        }
+    }
+
+    /**
+     * Runs an action the first time a tab is shown.
+     * <br/>The action is delayed to the next pulse so that the tab is displayed first.
+     *
+     * @param tab    The tab.
+     * @param action The action.
+     */
+    private static void runOnFirstShow(final Tab tab, final Runnable action) {
+        if (tab.isSelected()) {
+            Platform.runLater(action);
+            return;
+        }
+        tab.selectedProperty().addListener(new InvalidationListener() {
             @Override
-            protected boolean computeValue() {
-                final boolean cssReady = cssEditor.isInitialized();
-                final boolean fxmlReady = fxmlEditor.isInitialized();
-                return cssReady && fxmlReady;
-            }
-        };
-        codeEditorInitialized.addListener((_, _, newValue) -> {
-            if (newValue) {
-                try {
-                    cssEditor.setMode(CodeEditor.Mode.CSS);
-                    fxmlEditor.setMode(CodeEditor.Mode.XML);
-                    reloadCSSFromTemplate();
-                    reloadFXMLFromTemplate();
-                    populatePreviewPane();
-                    changePreviewLabels();
-                } catch (IOException ex) {
-                    LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
-                } finally {
-                    cssEditor.textProperty().addListener(textInvalitationListener);
-                    fxmlEditor.textProperty().addListener(textInvalitationListener);
-                    codeEditorInitialized.dispose();
-                    codeEditorInitialized = null;
+            public void invalidated(final Observable observable) {
+                if (tab.isSelected()) {
+                    tab.selectedProperty().removeListener(this);
+                    Platform.runLater(action);
                 }
             }
         });
     }
 
+    /**
+     * Creates a code editor.
+     * <br/>Once the editor is ready, it displays the template text and its changes are saved.
+     *
+     * @param content      The parent of the editor.
+     * @param mode         The mode of the editor.
+     * @param templateText Gives the text of the template when the editor is ready.
+     * @param saveButton   The save button of the editor, enabled when the editor is ready.
+     * @return A {@code CodeEditor} instance, never {@code null}.
+     */
+    private CodeEditor createEditor(final VBox content, final CodeEditor.Mode mode, final Supplier<String> templateText, final Button saveButton) {
+        final var editor = new CodeEditor();
+        VBox.setVgrow(editor, Priority.ALWAYS);
+        content.getChildren().add(editor);
+        editor.setOnInitialized(_ -> {
+            editor.setMode(mode);
+            editor.setText(templateText.get());
+            editor.textProperty().addListener(textInvalitationListener);
+            saveButton.setDisable(false);
+        });
+        return editor;
+    }
+
     /**
      * Repopulate the preview pane.
+     * <br/>Thumbnails are kept from one call to the next: the FXML is only parsed again when its text changed
+     * and the stylesheet is only replaced when the CSS text changed.
      */
     private void populatePreviewPane() {
-        // Remove old previews.
-        previewPane.getChildren().clear();
         try {
-            // Try to load the node to see if it works or not.
-            final var fxmlURL = fxmlFile.toURI().toURL();
-            final var cssURL = cssFile.toURI().toURL();
-            final var tempCSSFile = File.createTempFile(cssFile.getName(), null);
-            try (final var tempCSSOutput = new FileOutputStream(tempCSSFile)) {
-                Files.copy(cssFile.toPath(), tempCSSOutput);
+            // The texts are taken from the editors when they are ready, without going through the files.
+            final var fxmlText = isReady(fxmlEditor) ? fxmlEditor.getText() : fxmlTemplateText;
+            final var cssText = isReady(cssEditor) ? cssEditor.getText() : cssTemplateText;
+            if (Objects.isNull(fxmlText) || Objects.isNull(cssText)) {
+                // The template is not loaded yet.
+                return;
             }
-            final var tempCSSURL = tempCSSFile.toURI().toURL();
-            final var fxmlLoader = new FXMLLoader(fxmlURL);
-            final var node = fxmlLoader.<Region>load();
-//            node.getStylesheets().add(cssURL.toExternalForm());
-            node.getStylesheets().add(tempCSSURL.toExternalForm());
-            // Load new previews.
-            states.forEach((final var state) -> {
-                try {
-                    final var fxmlLoader1 = new FXMLLoader(fxmlURL);
-                    final var node1 = fxmlLoader1.<Region>load();
-//                    node1.getStylesheets().add(cssURL.toExternalForm());
-                    node1.getStylesheets().add(tempCSSURL.toExternalForm());
-                    final var pseudoClass = PseudoClass.getPseudoClass(state.getName());
-                    node1.pseudoClassStateChanged(pseudoClass, true);
-                    final var stateGroup = new Group(node1);
-                    stateGroup.setId("stateGroup_%s".formatted(state)); // NOI18N.
-                    StackPane statePreviewPane = new StackPane(stateGroup);
-                    statePreviewPane.getStyleClass().add("preview-pane"); // NOI18N.
-                    final var stateLabel = new Label();
-                    stateLabel.setId("stateLabel_%s".formatted(state)); // NOI18N.
-                    stateLabel.getStyleClass().add("state-label");
-                    stateLabel.setText(state.getName());
-                    final var stateActionBar = new HBox();
-                    stateActionBar.getStyleClass().add("action-bar"); // NOI18N.
-                    stateActionBar.getChildren().add(stateLabel);
-                    final var previewThumbnail = new BorderPane();
-                    previewThumbnail.getStyleClass().add("preview-thumbnail"); // NOI18N.
-                    previewThumbnail.setTop(stateActionBar);
-                    previewThumbnail.setCenter(statePreviewPane);
-                    VBox.setVgrow(previewThumbnail, Priority.ALWAYS);
-                    previewPane.getChildren().add(previewThumbnail);
-                } catch (IOException ex) {
-                    LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
+            // The first node parsed after a change of the FXML is given to the first new thumbnail.
+            Region parsedNode = null;
+            if (!fxmlText.equals(previewFXMLText)) {
+                // Reuse the node parsed during validation or try to load the node to see if it works or not.
+                parsedNode = (Objects.nonNull(validatedTemplate) && fxmlText.equals(validatedTemplate.fxmlText())) ? validatedTemplate.node() : loadPreviewNode(fxmlText);
+                previewThumbnails.clear();
+                previewFXMLText = fxmlText;
+            }
+            if (!cssText.equals(previewCSSText)) {
+                previewStylesheet = Stylesheets.toDataURI(cssText);
+                previewCSSText = cssText;
+            }
+            // Reuse the thumbnails of states that are still there.
+            final var thumbnails = new LinkedHashMap<String, PreviewThumbnail>();
+            for (final var state : states) {
+                var thumbnail = previewThumbnails.get(state.getName());
+                if (Objects.isNull(thumbnail)) {
+                    thumbnail = new PreviewThumbnail(state, Objects.nonNull(parsedNode) ? parsedNode : loadPreviewNode(fxmlText));
+                    parsedNode = null;
                 }
-            });
+                thumbnail.setStylesheet(previewStylesheet);
+                thumbnails.put(state.getName(), thumbnail);
+            }
+            previewThumbnails.clear();
+            previewThumbnails.putAll(thumbnails);
+            final var children = thumbnails.values()
+                    .stream()
+                    .map(PreviewThumbnail::getPane)
+                    .toList();
+            if (!previewPane.getChildren().equals(children)) {
+                previewPane.getChildren().setAll(children);
+            }
         } catch (Exception ex) {
             LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
+            // Remove old previews, the template will be parsed again on the next call.
+            previewPane.getChildren().clear();
+            previewThumbnails.clear();
+            previewFXMLText = null;
+        }
+    }
+
+    /**
+     * Parses the FXML template of the preview.
+     *
+     * @param fxmlText The text of the FXML template.
+     * @return A {@code Region} instance, never {@code null}.
+     * @throws IOException In case of IO or parsing error.
+     */
+    private Region loadPreviewNode(final String fxmlText) throws IOException {
+        final var fxmlLoader = new FXMLLoader(fxmlFile.toURI().toURL());
+        try (final var input = new ByteArrayInputStream(fxmlText.getBytes(ENCODING))) {
+            return fxmlLoader.<Region>load(input);
         }
     }
 
@@ -360,6 +495,8 @@ public final class MainUIController extends ControllerBase implements Initializa
      */
     @FXML
     private void handleRefreshButton(final ActionEvent actionEvent) {
+        previewFXMLText = null;
+        previewCSSText = null;
         populatePreviewPane();
         changePreviewLabels();
     }
@@ -408,39 +545,40 @@ public final class MainUIController extends ControllerBase implements Initializa
 
     @FXML
     private void handleSaveCSSButton(final ActionEvent actionEvent) {
-        exportTemplateMayBe(cssEditor, "css", loadCSSButton); // NOI18N.
+        exportTemplateMayBe(cssEditor, this::importCSSText, "css", loadCSSButton); // NOI18N.
     }
 
     @FXML
     private void handleSaveFXMLButton(final ActionEvent actionEvent) {
-        exportTemplateMayBe(fxmlEditor, "fxml", loadFXMLButton); // NOI18N.
+        exportTemplateMayBe(fxmlEditor, this::importFXMLText, "fxml", loadFXMLButton); // NOI18N.
     }
 
     @FXML
     private void handleLoadCSSButton(final ActionEvent actionEvent) {
-        importTemplateMayBe(cssEditor, "css", loadCSSButton); // NOI18N.
+        importTemplateMayBe(this::importCSSText, "css", loadCSSButton); // NOI18N.
     }
 
     @FXML
     private void handleLoadFXMLButton(final ActionEvent actionEvent) {
-        importTemplateMayBe(fxmlEditor, "fxml", loadFXMLButton); // NOI18N.
+        importTemplateMayBe(this::importFXMLText, "fxml", loadFXMLButton); // NOI18N.
     }
 
     /**
      * Display a file dialog box that allows the user to export a template.
      *
      * @param codeEditor Source code editor.
+     * @param importer   Imports the text of the file when the menu item of the load button is activated.
      * @param extension  File extension to use.
      * @param loadButton The associated load button.
      */
-    private void exportTemplateMayBe(final CodeEditor codeEditor, final String extension, final SplitMenuButton loadButton) {
+    private void exportTemplateMayBe(final CodeEditor codeEditor, final Consumer<String> importer, final String extension, final SplitMenuButton loadButton) {
         final var dialog = prepareInputFileDialog("template", extension);
         Optional.ofNullable(dialog.showSaveDialog(loadButton.getScene().getWindow()))
                 .ifPresent(file -> {
                     Settings.getPrefs().put("last.input.folder", file.getParent()); // NOI18N.
                     try {
                         exportTemplateToFile(codeEditor, file);
-                        addFileToLoadButton(codeEditor, loadButton, file);
+                        addFileToLoadButton(importer, loadButton, file);
                     } catch (IOException ex) {
                         LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
                     }
@@ -476,11 +614,11 @@ public final class MainUIController extends ControllerBase implements Initializa
     /**
      * Add selected file to the load button's menu.
      *
-     * @param codeEditor The code editor (used when activating the menu item).
+     * @param importer   Imports the text of the file when the menu item is activated.
      * @param loadButton The load button which will host the menu.
      * @param file       The source file.
      */
-    private void addFileToLoadButton(final CodeEditor codeEditor, final SplitMenuButton loadButton, final File file) {
+    private void addFileToLoadButton(final Consumer<String> importer, final SplitMenuButton loadButton, final File file) {
         boolean found = false;
         for (final var menuItem : loadButton.getItems()) {
             final var itemFile = (File) menuItem.getProperties().get("file"); // NOI18N.
@@ -494,7 +632,7 @@ public final class MainUIController extends ControllerBase implements Initializa
             menuItem.getProperties().put("file", file); // NOI18N.
             menuItem.setOnAction(_ -> {
                 try {
-                    reloadTextFromTemplate(file, codeEditor);
+                    importer.accept(readTemplateText(file));
                 } catch (IOException ex) {
                     LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
                 }
@@ -520,24 +658,59 @@ public final class MainUIController extends ControllerBase implements Initializa
     /**
      * Display a file dialog box that allows the user to import a template.
      *
-     * @param codeEditor Source code editor.
+     * @param importer   Imports the text of the selected file.
      * @param extension  File extension to use.
      * @param loadButton The associated load button.
      */
-    private void importTemplateMayBe(final CodeEditor codeEditor, final String extension, final SplitMenuButton loadButton) {
+    private void importTemplateMayBe(final Consumer<String> importer, final String extension, final SplitMenuButton loadButton) {
         final var dialog = prepareInputFileDialog("template", extension);
         Optional.ofNullable(dialog.showOpenDialog(loadButton.getScene().getWindow()))
                 .ifPresent(file -> {
                     Settings.getPrefs().put("last.input.folder", file.getParent()); // NOI18N.
                     try {
-                        reloadTextFromTemplate(file, codeEditor);
-                        addFileToLoadButton(codeEditor, loadButton, file);
+                        importer.accept(readTemplateText(file));
+                        addFileToLoadButton(importer, loadButton, file);
                     } catch (IOException ex) {
                         LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
                     }
                 });
     }
 
+    private void importCSSText(final String text) {
+        if (!isReady(cssEditor)) {
+            // The editor displays the template text once it is ready.
+            cssTemplateText = text;
+        }
+        importTemplateText(cssEditor, cssFile, text);
+    }
+
+    private void importFXMLText(final String text) {
+        if (!isReady(fxmlEditor)) {
+            // The editor displays the template text once it is ready.
+            fxmlTemplateText = text;
+        }
+        importTemplateText(fxmlEditor, fxmlFile, text);
+    }
+
+    /**
+     * Imports a template text.
+     * <br/>When the editor is ready, its text is replaced and the change is saved and validated like any edit;
+     * otherwise, the text is saved directly and displayed in the preview.
+     *
+     * @param editor The editor, may be {@code null}.
+     * @param file   The template file.
+     * @param text   The text.
+     */
+    private void importTemplateText(final CodeEditor editor, final File file, final String text) {
+        if (isReady(editor)) {
+            editor.setText(text);
+            return;
+        }
+        templateStore.save(file, () -> text + System.lineSeparator());
+        populatePreviewPane();
+        changePreviewLabels();
+    }
+
     private void exportCSSFromSource() throws IOException {
         final var url = getClass().getResource("template/template.css"); // NOI18N.
         exportSourceToTemplate(url, cssFile);
@@ -559,6 +732,8 @@ public final class MainUIController extends ControllerBase implements Initializa
     }
 
     private void exportSourceToTemplate(final URL url, final File file) throws IOException {
+        // Pending saves must not overwrite the file afterward.
+        templateStore.flush();
         if (file.exists()) {
             file.delete();
         }
@@ -568,14 +743,35 @@ public final class MainUIController extends ControllerBase implements Initializa
     }
 
     private void reloadCSSFromTemplate() throws IOException {
-        reloadTextFromTemplate(cssFile, cssEditor);
+        cssTemplateText = readTemplateText(cssFile);
+        showTemplateText(cssEditor, cssTemplateText);
     }
 
     private void reloadFXMLFromTemplate() throws IOException {
-        reloadTextFromTemplate(fxmlFile, fxmlEditor);
+        fxmlTemplateText = readTemplateText(fxmlFile);
+        showTemplateText(fxmlEditor, fxmlTemplateText);
     }
 
-    private void reloadTextFromTemplate(final File file, final CodeEditor editor) throws IOException {
+    /**
+     * Displays a template text in its editor, or in the preview if the editor is not ready yet.
+     *
+     * @param editor The editor, may be {@code null}.
+     * @param text   The text.
+     */
+    private void showTemplateText(final CodeEditor editor, final String text) {
+        if (isReady(editor)) {
+            editor.setText(text);
+        } else {
+            populatePreviewPane();
+            changePreviewLabels();
+        }
+    }
+
+    private static boolean isReady(final CodeEditor editor) {
+        return Objects.nonNull(editor) && editor.isInitialized();
+    }
+
+    private static String readTemplateText(final File file) throws IOException {
         try (final var fileReader = new FileReader(file)) {
             try (final var lineReader = new LineNumberReader(fileReader)) {
                 final var builder = new StringBuilder();
@@ -583,7 +779,7 @@ public final class MainUIController extends ControllerBase implements Initializa
                     builder.append(line);
                     builder.append("\n");
                 }
-                editor.setText(builder.toString());
+                return builder.toString();
             }
         }
     }
@@ -593,93 +789,48 @@ public final class MainUIController extends ControllerBase implements Initializa
     }
 
     private void reloadStatesFromTemplate() throws IOException {
-        clearStates();
-        reloadStatesFromFile(statesFile);
+        modelChanges.batch(() -> {
+            clearStates();
+            reloadStatesFromFile(statesFile);
+        });
     }
 
     private void reloadStatesFromFile(final File file) throws IOException {
-        final var fileContent = new Properties();
-        try (final var input = new FileInputStream(file)) {
-            fileContent.load(input);
-        }
-        final var values = new ArrayList<>(fileContent.stringPropertyNames());
-        Collections.sort(values);
-        values.stream()
-                .map(value -> {
-                    final var color = fileContent.getProperty(value);
-                    return initializeState(value, color);
-                })
-                .forEach(states::add);
+        states.addAll(CatalogueFiles.readStates(file));
         Collections.sort(states);
     }
 
-    private State initializeState(final String name, final String colorName) {
-        final var color = (Objects.isNull(colorName) || colorName.isBlank()) ? Color.BLACK : Color.valueOf(colorName);
-        return new State(name, color);
-    }
-
     private void reloadInfectionsFromTemplate() throws IOException {
-        clearInfections();
-        reloadInfectionsFromFile(infectionsFile);
+        modelChanges.batch(() -> {
+            clearInfections();
+            reloadInfectionsFromFile(infectionsFile);
+        });
     }
 
     private void clearInfections() {
-        infections.forEach(infection -> {
-            infection.nameProperty().removeListener(infectionValueInvalidationListener);
-            infection.fileNameProperty().removeListener(infectionValueInvalidationListener);
-            infection.getStates().removeListener(invalidationStateListChangeListener);
-        });
+        infections.forEach(infection -> infection.setOnChange(null));
         infections.clear();
     }
 
     private void reloadInfectionsFromFile(final File file) throws IOException {
-        final var fileContent = new Properties();
-        try (final var input = new FileInputStream(file)) {
-            fileContent.load(input);
-        }
-        final var values = new ArrayList<>(fileContent.stringPropertyNames());
-        Collections.sort(values);
-        values.forEach(value -> {
-            final var name = value.replaceAll("_", " "); // NOI18N.
-            final var line = fileContent.getProperty(value);
-            final var lineTokens = line.split("\\|"); // NOI18N.
-            final var fileName = (line.contains("|") || lineTokens.length > 1) ? lineTokens[0] : null; // NOI18N.
-            final var infection = new Infection(name, fileName);
-            final var statesLine = (lineTokens.length == 1) ? (line.contains("|") ? "" : lineTokens[0]) : lineTokens[1]; // NOI18N.
-            final var tokens = statesLine.split("\\s+"); // NOI18N.
-            for (final var token : tokens) {
-                final var stateName = token.trim();
-                if (stateName.isEmpty()) {
-                    continue;
-                }
-                final var filteredStates = states.filtered((state) -> token.equals(state.getName()));
-                if (filteredStates.isEmpty()) {
-                    final var state = initializeState(token, null);
-                    states.add(state);
-                }
-                infection.getStates().add(filteredStates.getFirst());
-            }
-            infection.nameProperty().addListener(infectionValueInvalidationListener);
-            infection.fileNameProperty().addListener(infectionValueInvalidationListener);
-            infection.getStates().addListener(invalidationStateListChangeListener);
-            infections.add(infection);
-        });
-        Collections.sort(states);
+        final var loadedInfections = CatalogueFiles.readInfections(file, states);
+        loadedInfections.forEach(infection -> infection.setOnChange(infectionChangeHandler));
+        infections.addAll(loadedInfections);
         Collections.sort(infections);
     }
 
-    private void saveCSSToTemplate() throws IOException {
+    private void saveCSSToTemplate() {
         saveCodeToFile(cssEditor, cssFile);
     }
 
-    private void saveFXMLToTemplate() throws IOException {
+    private void saveFXMLToTemplate() {
         saveCodeToFile(fxmlEditor, fxmlFile);
     }
 
-    private void saveCodeToFile(final CodeEditor editor, final File file) throws IOException {
-        try (final var writer = new PrintWriter(file, ENCODING)) {
-            final var text = editor.getText();
-            writer.println(text);
+    private void saveCodeToFile(final CodeEditor editor, final File file) {
+        // An editor that is not ready has nothing new to save.
+        if (isReady(editor)) {
+            templateStore.save(file, () -> editor.getText() + System.lineSeparator());
         }
     }
 
@@ -689,8 +840,10 @@ public final class MainUIController extends ControllerBase implements Initializa
                 .ifPresent(file -> {
                     Settings.getPrefs().put("last.input.folder", file.getParent()); // NOI18N.
                     try {
-                        clearStates();
-                        reloadStatesFromFile(file);
+                        modelChanges.batch(() -> {
+                            clearStates();
+                            reloadStatesFromFile(file);
+                        });
                         if (!stateEditorController.getRecentFiles().contains(file)) {
                             stateEditorController.getRecentFiles().add(file);
                         }
@@ -713,12 +866,24 @@ public final class MainUIController extends ControllerBase implements Initializa
                 });
     }
 
-    private void saveStatesToTemplate() throws IOException {
-        saveStatesToFile(statesFile);
+    private void saveStatesToTemplate() {
+        templateStore.save(statesFile, this::formatStates);
     }
 
     private void saveStatesToFile(final File file) throws IOException {
         try (final var writer = new PrintWriter(file, ENCODING)) {
+            writer.print(formatStates());
+        }
+    }
+
+    /**
+     * Formats the states in the properties format.
+     *
+     * @return A {@code String} instance, never {@code null}.
+     */
+    private String formatStates() {
+        final var result = new StringWriter();
+        try (final var writer = new PrintWriter(result)) {
             states.forEach((State state) -> {
                 final var line = new StringBuilder();
                 final var name = state.getName();
@@ -732,6 +897,7 @@ public final class MainUIController extends ControllerBase implements Initializa
                 writer.println(line.toString().trim());
             });
         }
+        return result.toString();
     }
 
     private void importInfectionsMayBe() {
@@ -740,8 +906,10 @@ public final class MainUIController extends ControllerBase implements Initializa
                 .ifPresent(file -> {
                     Settings.getPrefs().put("last.input.folder", file.getParent()); // NOI18N.
                     try {
-                        clearInfections();
-                        reloadInfectionsFromFile(file);
+                        modelChanges.batch(() -> {
+                            clearInfections();
+                            reloadInfectionsFromFile(file);
+                        });
                         if (!infectionEditorController.getRecentFiles().contains(file)) {
                             infectionEditorController.getRecentFiles().add(file);
                         }
@@ -764,12 +932,24 @@ public final class MainUIController extends ControllerBase implements Initializa
                 });
     }
 
-    private void saveInfectionsToTemplate() throws IOException {
-        saveInfectionsToFile(infectionsFile);
+    private void saveInfectionsToTemplate() {
+        templateStore.save(infectionsFile, this::formatInfections);
     }
 
     private void saveInfectionsToFile(final File file) throws IOException {
         try (final var writer = new PrintWriter(file, ENCODING)) {
+            writer.print(formatInfections());
+        }
+    }
+
+    /**
+     * Formats the infections in the properties format.
+     *
+     * @return A {@code String} instance, never {@code null}.
+     */
+    private String formatInfections() {
+        final var result = new StringWriter();
+        try (final var writer = new PrintWriter(result)) {
             infections.forEach((Infection infection) -> {
                 final var line = new StringBuilder();
                 final var name = infection.getName();
@@ -780,17 +960,21 @@ public final class MainUIController extends ControllerBase implements Initializa
                     line.append(fileName);
                     line.append("|"); // NOI18N.
                 }
-                infection.getStates().forEach(state -> {
+                infection.forEachState(state -> {
                     line.append(state);
                     line.append(" "); // NOI18N.
                 });
                 writer.println(line.toString().trim());
             });
         }
+        return result.toString();
     }
 
     private void requestSaveAndReload() {
         LOGGER.log(Level.INFO, "requestSaveAndReload()");
+        // The text being validated is already outdated.
+        Optional.ofNullable(validationService)
+                .ifPresent(Service::cancel);
         if (Objects.isNull(waitTimer)) {
             final var pauseTransition = new PauseTransition(timerDuration);
             pauseTransition.setOnFinished(_ -> {
@@ -804,21 +988,71 @@ public final class MainUIController extends ControllerBase implements Initializa
 
     /**
      * Save edited text and reload content of preview panel.
+     * <br/>The preview is only reloaded once the template has been validated in the background, and only if it is valid.
      */
     private void saveAndReload() {
         LOGGER.log(Level.INFO, "saveAndReload()");
-        try {
-            saveCSSToTemplate();
-            saveFXMLToTemplate();
-            saveInfectionsToTemplate();
-            populatePreviewPane();
-            changePreviewLabels();
-        } catch (IOException ex) {
-            LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
+        saveCSSToTemplate();
+        saveFXMLToTemplate();
+        saveInfectionsToTemplate();
+        final var fxmlText = isReady(fxmlEditor) ? fxmlEditor.getText() : fxmlTemplateText;
+        final var cssText = isReady(cssEditor) ? cssEditor.getText() : cssTemplateText;
+        if (Objects.isNull(fxmlText) || Objects.isNull(cssText)) {
+            return;
         }
+        if (Objects.isNull(validationService)) {
+            try {
+                validationService = new TemplateValidationService(fxmlFile.toURI().toURL());
+            } catch (MalformedURLException ex) {
+                LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
+                return;
+            }
+            validationService.setOnSucceeded(_ -> applyValidation(validationService.getValue()));
+            validationService.setOnFailed(_ -> {
+                final var ex = validationService.getException();
+                LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
+            });
+        }
+        validationService.setTexts(fxmlText, cssText);
+        validationService.restart();
+    }
+
+    /**
+     * Reports the result of a validation to the editors and reloads the preview if the template is valid.
+     *
+     * @param result The result, may be {@code null} if the validation was cancelled.
+     */
+    private void applyValidation(final TemplateValidationService.Result result) {
+        if (Objects.isNull(result)) {
+            return;
+        }
+        Optional.ofNullable(cssEditor)
+                .ifPresent(editor -> editor.setError(result.cssError()));
+        Optional.ofNullable(fxmlEditor)
+                .ifPresent(editor -> editor.setError(result.fxmlError()));
+        if (!result.isValid()) {
+            LOGGER.log(Level.INFO, "Template is not valid, the preview is not reloaded.");
+            return;
+        }
+        validatedTemplate = result;
+        populatePreviewPane();
+        validatedTemplate = null;
+        changePreviewLabels();
+    }
+
+    /**
+     * Writes the pending saves and releases the resources of this controller.
+     * <br/>Invoked when the application exits.
+     */
+    public void dispose() {
+        Optional.ofNullable(validationService)
+                .ifPresent(Service::cancel);
+        templateStore.close();
     }
 
     private void generateOutput() {
+        // The task reads the template files.
+        templateStore.flush();
         Optional.ofNullable(generationService)
                 .ifPresent(Service::cancel);
         if (Objects.isNull(generationService)) {
@@ -833,7 +1067,12 @@ public final class MainUIController extends ControllerBase implements Initializa
                     final var folder = new File(path);
                     // Copy infection list.
                     final var infectionList = new LinkedList<>(infections);
-                    return new GenerationTask(folder, infectionList, fxmlFile, cssFile);
+                    // Options.
+                    final var options = new GenerationOptions();
+                    options.setAtlasEnabled(Settings.getPrefs().getBoolean("generation.atlas", false)); // NOI18N.
+                    options.setSpriteSheetEnabled(Settings.getPrefs().getBoolean("generation.spritesheet", false)); // NOI18N.
+                    options.setCacheFile(new File(homeFolder, "render-cache.properties")); // NOI18N.
+                    return new GenerationTask(folder, infectionList, fxmlFile, cssFile, options);
                 }
             };
             generationService.setOnSucceeded(_ -> LOGGER.log(Level.INFO, "Output generation succeeded."));
@@ -846,4 +1085,65 @@ public final class MainUIController extends ControllerBase implements Initializa
         }
         generationService.restart();
     }
+
+    /**
+     * Content of the template, loaded in the background.
+     *
+     * @param states     The states.
+     * @param infections The infections.
+     * @param cssText    The text of the CSS template.
+     * @param fxmlText   The text of the FXML template.
+     * @author Fabrice Bouyé (fabriceb@spc.int)
+     */
+    private record TemplateContent(List<State> states, List<Infection> infections, String cssText, String fxmlText) {
+    }
+
+    /**
+     * A preview thumbnail: the template node of a state under a bar that displays the name of the state.
+     *
+     * @author Fabrice Bouyé (fabriceb@spc.int)
+     */
+    private static final class PreviewThumbnail {
+
+        private final BorderPane pane = new BorderPane();
+        private final Region node;
+        private String stylesheet;
+
+        PreviewThumbnail(final State state, final Region node) {
+            this.node = node;
+            final var pseudoClass = PseudoClass.getPseudoClass(state.getName());
+            node.pseudoClassStateChanged(pseudoClass, true);
+            final var stateGroup = new Group(node);
+            stateGroup.setId("stateGroup_%s".formatted(state)); // NOI18N.
+            final var statePreviewPane = new StackPane(stateGroup);
+            statePreviewPane.getStyleClass().add("preview-pane"); // NOI18N.
+            final var stateLabel = new Label();
+            stateLabel.setId("stateLabel_%s".formatted(state)); // NOI18N.
+            stateLabel.getStyleClass().add("state-label"); // NOI18N.
+            stateLabel.setText(state.getName());
+            final var stateActionBar = new HBox();
+            stateActionBar.getStyleClass().add("action-bar"); // NOI18N.
+            stateActionBar.getChildren().add(stateLabel);
+            pane.getStyleClass().add("preview-thumbnail"); // NOI18N.
+            pane.setTop(stateActionBar);
+            pane.setCenter(statePreviewPane);
+            VBox.setVgrow(pane, Priority.ALWAYS);
+        }
+
+        BorderPane getPane() {
+            return pane;
+        }
+
+        /**
+         * Sets the stylesheet of the template node, does nothing if it is already set.
+         *
+         * @param stylesheet URL of the stylesheet.
+         */
+        void setStylesheet(final String stylesheet) {
+            if (!Objects.equals(stylesheet, this.stylesheet)) {
+                node.getStylesheets().setAll(stylesheet);
+                this.stylesheet = stylesheet;
+            }
+        }
+    }
 }
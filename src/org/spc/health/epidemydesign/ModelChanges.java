@@ -0,0 +1,88 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Groups changes made to the infections and states into batches.
+ * <br/>Outside of a batch, observers are invoked as soon as they are notified; during a batch, each observer is
+ * invoked once, when the outermost batch ends, no matter how many changes notified it.
+ * <br/>Observers are identified by reference, they should be kept in fields rather than created on each notification.
+ * <br/>This class is not thread-safe, it is meant to be used on the JavaFX Application Thread.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class ModelChanges {
+
+    private int depth;
+    private final Set<Runnable> pendingObservers = new LinkedHashSet<>();
+
+    /**
+     * Creates a new instance.
+     */
+    public ModelChanges() {
+        super();
+    }
+
+    /**
+     * Runs changes as a single batch.
+     * <br/>Batches may be nested, observers are invoked when the outermost batch ends.
+     *
+     * @param <E>     The type of exception thrown by the changes.
+     * @param changes The changes.
+     * @throws E If the changes failed; observers notified before the failure are still invoked.
+     */
+    public <E extends Exception> void batch(final Changes<E> changes) throws E {
+        depth++;
+        try {
+            changes.run();
+        } finally {
+            depth--;
+            if (depth == 0) {
+                final var observers = new ArrayList<>(pendingObservers);
+                pendingObservers.clear();
+                observers.forEach(Runnable::run);
+            }
+        }
+    }
+
+    /**
+     * Notifies an observer that the model changed.
+     *
+     * @param observer The observer.
+     */
+    public void notify(final Runnable observer) {
+        if (depth == 0) {
+            observer.run();
+        } else {
+            pendingObservers.add(observer);
+        }
+    }
+
+    /**
+     * Tests whether a batch is running.
+     *
+     * @return {@code True} if a batch is running, {@code false} otherwise.
+     */
+    public boolean isInBatch() {
+        return depth > 0;
+    }
+
+    /**
+     * Changes run in a batch.
+     *
+     * @param <E> The type of exception thrown by the changes.
+     * @author Fabrice Bouyé (fabriceb@spc.int)
+     */
+    @FunctionalInterface
+    public interface Changes<E extends Exception> {
+
+        void run() throws E;
+    }
+}
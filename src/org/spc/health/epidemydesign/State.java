@@ -18,11 +18,16 @@ public final class State implements Comparable<State> {
     private final String id;
     private final String name;
     private final Color color;
+    /**
+     * The interned id of this state.
+     */
+    private final int index;
 
     public State(final String name, final Color color) {
         this.id = name;
         this.name = name;
         this.color = color;
+        this.index = StateIndex.intern(this);
     }
 
     @Override
@@ -48,6 +53,15 @@ public final class State implements Comparable<State> {
         return color;
     }
 
+    /**
+     * Gets the interned id of this state, shared by all states of the same name.
+     *
+     * @return An {@code int} {@code >= 0}.
+     */
+    int getIndex() {
+        return index;
+    }
+
     @Override
     public String toString() {
         return name;
@@ -0,0 +1,52 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Interns states into integer ids.
+ * <br/>States are identified by their name, all states with the same name share the same id; the latest state
+ * created with a given name is the one returned for its id.
+ * <br/>Ids are small, dense and never reused, which allows infections to store their states in a bit set.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+final class StateIndex {
+
+    private static final Map<String, Integer> IDS = new HashMap<>();
+    private static State[] states = new State[16];
+
+    private StateIndex() {
+    }
+
+    /**
+     * Interns a state.
+     *
+     * @param state The state.
+     * @return The id of the state.
+     */
+    static synchronized int intern(final State state) {
+        final int id = IDS.computeIfAbsent(state.getName(), _ -> IDS.size());
+        if (id >= states.length) {
+            states = Arrays.copyOf(states, 2 * states.length);
+        }
+        states[id] = state;
+        return id;
+    }
+
+    /**
+     * Gets the state of an id.
+     *
+     * @param id The id.
+     * @return A {@code State} instance, never {@code null}.
+     */
+    static synchronized State get(final int id) {
+        return states[id];
+    }
+}
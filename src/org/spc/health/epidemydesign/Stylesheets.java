@@ -0,0 +1,35 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Delivers stylesheets from memory.
+ * <br/>Stylesheets are given to the CSS engine as {@code data:} URIs, which avoids copying the CSS into a new
+ * temporary file each time it changes; since the URI is made from the content, the CSS engine only parses the same
+ * text once and parses it again as soon as the text changes.
+ * <br/>Relative URLs in the stylesheet cannot be resolved from such URIs.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class Stylesheets {
+
+    private Stylesheets() {
+    }
+
+    /**
+     * Creates the URI of a stylesheet.
+     *
+     * @param css The text of the stylesheet.
+     * @return A {@code String} instance, never {@code null}.
+     */
+    public static String toDataURI(final String css) {
+        final var bytes = css.getBytes(StandardCharsets.UTF_8);
+        return "data:text/css;charset=utf-8;base64," + Base64.getEncoder().encodeToString(bytes); // NOI18N.
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign;
+
+import javafx.concurrent.Service;
+import javafx.concurrent.Task;
+import javafx.css.CssParser;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.layout.Region;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Validates the FXML and CSS texts of the template in the background.
+ * <br/>Restarting the service cancels the validation in progress, only the result for the latest texts is delivered.
+ * <br/>The node parsed from a valid FXML text is part of the result, so that the preview does not need to parse it again.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+final class TemplateValidationService extends Service<TemplateValidationService.Result> {
+
+    /**
+     * Gives each CSS validation its own source name, to find its errors among the errors reported by the CSS parser.
+     */
+    private static final AtomicInteger SOURCE_GENERATOR = new AtomicInteger();
+    /**
+     * Logger of the CSS parser, kept in a field so that its handlers are not lost.
+     */
+    private static final Logger CSS_LOGGER = Logger.getLogger("javafx.css"); // NOI18N.
+    /**
+     * Location of the FXML template, used to resolve relative references.
+     */
+    private final URL location;
+    private String fxmlText;
+    private String cssText;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param location Location of the FXML template.
+     */
+    TemplateValidationService(final URL location) {
+        this.location = Objects.requireNonNull(location);
+    }
+
+    /**
+     * Sets the texts checked by the next run of this service.
+     * <br/>This method must be invoked on the JavaFX Application Thread.
+     *
+     * @param fxmlText The text of the FXML template.
+     * @param cssText  The text of the CSS template.
+     */
+    void setTexts(final String fxmlText, final String cssText) {
+        this.fxmlText = fxmlText;
+        this.cssText = cssText;
+    }
+
+    @Override
+    protected Task<Result> createTask() {
+        final var fxml = fxmlText;
+        final var css = cssText;
+        return new Task<>() {
+            @Override
+            protected Result call() throws Exception {
+                final var cssError = validateCSS(css);
+                if (isCancelled()) {
+                    return null;
+                }
+                try (final var input = new ByteArrayInputStream(fxml.getBytes(StandardCharsets.UTF_8))) {
+                    final var node = new FXMLLoader(location).<Region>load(input);
+                    return new Result(fxml, node, null, cssError);
+                } catch (Exception ex) {
+                    return new Result(fxml, null, describe(ex), cssError);
+                }
+            }
+        };
+    }
+
+    /**
+     * Parses a CSS text.
+     * <br/>Some errors, such as a missing closing brace, are only logged by the parser, so errors are read from its logger.
+     * <br/>The list of errors returned by {@code CssParser.errorsProperty()} is never used: it is created on first access, after
+     * which every stylesheet parsed by the application adds its errors to it, from any thread.
+     *
+     * @param css The CSS text.
+     * @return The errors, {@code null} if there is none.
+     * @throws IOException In case of IO error.
+     */
+    private static String validateCSS(final String css) throws IOException {
+        final var source = "template-validation-%d.css".formatted(SOURCE_GENERATOR.incrementAndGet()); // NOI18N.
+        final var thread = Thread.currentThread().threadId();
+        final var errorPrefix = "CSS Error parsing %s: ".formatted(source); // NOI18N.
+        final var errors = new LinkedHashSet<String>();
+        // Records logged by the current thread during the parsing belong to this stylesheet.
+        final var handler = new Handler() {
+            @Override
+            public void publish(final LogRecord record) {
+                final var message = record.getMessage();
+                if (record.getLongThreadID() != thread || Objects.isNull(message) || message.isBlank()) {
+                    return;
+                }
+                final var line = message.lines().findFirst().orElse(message).strip();
+                errors.add(line.startsWith(errorPrefix) ? line.substring(errorPrefix.length()) : line);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        CSS_LOGGER.addHandler(handler);
+        try {
+            new CssParser().parse(source, css);
+        } finally {
+            CSS_LOGGER.removeHandler(handler);
+        }
+        return errors.isEmpty() ? null : String.join("\n", errors); // NOI18N.
+    }
+
+    /**
+     * Describes an exception and its causes.
+     *
+     * @param ex The exception.
+     * @return A {@code String} instance, never {@code null}.
+     */
+    private static String describe(final Throwable ex) {
+        final var messages = new ArrayList<String>();
+        for (var cause = ex; Objects.nonNull(cause); cause = cause.getCause()) {
+            final var message = cause.getMessage();
+            if (Objects.nonNull(message) && !message.isBlank() && !messages.contains(message.strip())) {
+                messages.add(message.strip());
+            }
+        }
+        return messages.isEmpty() ? ex.getClass().getSimpleName() : String.join("\n", messages); // NOI18N.
+    }
+
+    /**
+     * Result of a validation.
+     *
+     * @param fxmlText  The validated FXML text.
+     * @param node      The node parsed from the FXML text, {@code null} if it could not be parsed.
+     * @param fxmlError The FXML error, {@code null} if there is none.
+     * @param cssError  The CSS errors, {@code null} if there is none.
+     * @author Fabrice Bouyé (fabriceb@spc.int)
+     */
+    record Result(String fxmlText, Region node, String fxmlError, String cssError) {
+
+        boolean isValid() {
+            return Objects.isNull(fxmlError) && Objects.isNull(cssError);
+        }
+    }
+}
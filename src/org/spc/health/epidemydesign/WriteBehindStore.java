@@ -0,0 +1,133 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign;
+
+import javafx.application.Platform;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Saves files in the background.
+ * <br/>Requests made while handling the same event are coalesced: the content of a file is only produced once,
+ * after the current event, on the JavaFX Application Thread; it is then written on a background thread.
+ * <br/>If the content of a file changes again before it is written, only the latest content is written.
+ * <br/>Files are written into a temporary file first, then moved over the target, so that a file is never left half written.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+final class WriteBehindStore {
+
+    private static final Logger LOGGER = Logger.getLogger(WriteBehindStore.class.getName());
+    /**
+     * Files that changed during the current event, with the supplier of their content.
+     * <br/>Only accessed on the JavaFX Application Thread.
+     */
+    private final Map<File, Supplier<String>> changedFiles = new LinkedHashMap<>();
+    /**
+     * Latest content of the files waiting to be written.
+     */
+    private final Map<File, String> pendingWrites = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        final var thread = new Thread(runnable, "write-behind-store"); // NOI18N.
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Requests a file to be saved.
+     * <br/>This method must be invoked on the JavaFX Application Thread.
+     *
+     * @param file    The target file.
+     * @param content Supplies the content of the file, invoked on the JavaFX Application Thread.
+     */
+    void save(final File file, final Supplier<String> content) {
+        if (changedFiles.isEmpty()) {
+            Platform.runLater(this::takeContents);
+        }
+        changedFiles.put(file, content);
+    }
+
+    /**
+     * Writes all requested files and waits for the writes to complete.
+     * <br/>This method must be invoked on the JavaFX Application Thread.
+     */
+    void flush() {
+        takeContents();
+        try {
+            // Writes are done in order on a single thread.
+            executor.submit(() -> {
+            }).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Writes all requested files, then stops the background thread.
+     * <br/>This method must be invoked on the JavaFX Application Thread.
+     */
+    void close() {
+        flush();
+        executor.shutdown();
+    }
+
+    /**
+     * Takes the content of the files that changed and hands it to the background thread.
+     */
+    private void takeContents() {
+        changedFiles.forEach((file, content) -> {
+            if (Objects.isNull(pendingWrites.put(file, content.get()))) {
+                executor.execute(() -> write(file));
+            }
+        });
+        changedFiles.clear();
+    }
+
+    /**
+     * Writes the latest content of a file.
+     *
+     * @param file The target file.
+     */
+    private void write(final File file) {
+        final var content = pendingWrites.remove(file);
+        if (Objects.isNull(content)) {
+            return;
+        }
+        final var target = file.toPath();
+        try {
+            final var tempFile = Files.createTempFile(target.toAbsolutePath().getParent(), file.getName(), ".tmp"); // NOI18N.
+            try {
+                Files.writeString(tempFile, content, StandardCharsets.UTF_8);
+                try {
+                    Files.move(tempFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException ex) {
+                    Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
+        }
+    }
+}
@@ -11,34 +11,49 @@ import javafx.beans.Observable;
 import javafx.beans.property.*;
 import javafx.beans.value.ChangeListener;
 import javafx.concurrent.Worker;
+import javafx.css.PseudoClass;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.geometry.Insets;
+import javafx.scene.Node;
+import javafx.scene.control.Label;
 import javafx.scene.layout.Region;
 import javafx.scene.web.WebView;
 import netscape.javascript.JSObject;
 
 import java.net.URL;
+import java.util.Locale;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * CSS and XML code editor with syntax highlight.
- * <br/>We use HTML5 for this editor.
+ * <br/>By default, we use HTML5 for this editor.
  * <br/>The underlying JavaScript editor is using <a href="http://codemirror.net/">CodeMirror</a>.
+ * <br/>A lighter editor made only of JavaFX controls can be used instead, see {@link Implementation}.
  *
  * @author Fabrice Bouyé (fabriceb@spc.int)
  */
 public class CodeEditor extends Region {
 
     private static final Logger LOGGER = Logger.getLogger(CodeEditor.class.getName());
+    /**
+     * System property that selects the default implementation, either {@code web} or {@code native}.
+     */
+    public static final String IMPLEMENTATION_PROPERTY = "epidemy.design.codeeditor"; // NOI18N.
+    private static final PseudoClass ERROR_PSEUDO_CLASS = PseudoClass.getPseudoClass("error"); // NOI18N.
     private static int ID_GENERATOR = 0;
     private final int id = ID_GENERATOR++;
     /**
-     * The delegated web view.
+     * The delegated web view, {@code null} when the native implementation is used.
      */
-    private final WebView webView = new WebView();
+    private final WebView webView;
+    /**
+     * The delegated native editor, {@code null} when the web implementation is used.
+     */
+    private final LightCodeArea codeArea;
     /**
      * Indicates whether this control has been initialized.
      */
@@ -55,6 +70,23 @@ public class CodeEditor extends Region {
      * Current content of the editor.
      */
     private final StringProperty text = new SimpleStringProperty(this, "text"); // NOI18N.
+    /**
+     * Error found in the content of the editor, {@code null} if there is none.
+     */
+    private final StringProperty error = new SimpleStringProperty(this, "error"); // NOI18N.
+    /**
+     * Displays the error under the editor.
+     */
+    private final Label errorLabel = new Label();
+    /**
+     * Called whenever the error is invalidated.
+     */
+    private final InvalidationListener errorInvalidationListener = _ -> {
+        final var hasError = Objects.nonNull(getError()) && !getError().isBlank();
+        pseudoClassStateChanged(ERROR_PSEUDO_CLASS, hasError);
+        errorLabel.setVisible(hasError);
+        requestLayout();
+    };
     /**
      * Action to execute once the editor has been initialized.
      */
@@ -86,16 +118,97 @@ public class CodeEditor extends Region {
      */
     private final InvalidationListener textInvalidationListener = _ -> {
         if (!isEditing) {
-            Platform.runLater(() -> {
-                clearPeerContent();
-                pushTextToPeer();
-            });
+            Platform.runLater(this::pushTextToPeer);
         }
     };
+    /**
+     * Copy of the content of the HTML5 peer, kept up to date with the changes made in the peer.
+     * <br/>Line breaks are normalized to {@code \n}, as in the peer.
+     */
+    private final StringBuilder document = new StringBuilder();
+    /**
+     * Whether the peer has received its first content.
+     */
+    private boolean peerLoaded = false;
+    /**
+     * Text being sent to the peer, read by JavaScript through the bridge object.
+     */
+    private String outgoingText;
+    /**
+     * Called when the state of the web engine loader changes.
+     */
+    private final ChangeListener<Worker.State> peerLoadStateChangeListener = (_, oldValue, newValue) -> peerLoadStateChanged(oldValue, newValue);
+
+    /**
+     * Creates a new instance using the default implementation.
+     * @see Implementation#getDefault()
+     */
+    public CodeEditor() {
+        this(Implementation.getDefault());
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param implementation The implementation.
+     */
+    public CodeEditor(final Implementation implementation) {
+        super();
+        setId("codeEditor"); // NOI18N.
+        getStyleClass().add("code-editor"); // NOI18N.
+        initialized.addListener(initializedChangeListener);
+        switch (implementation) {
+            case NATIVE -> {
+                webView = null;
+                codeArea = new LightCodeArea();
+                getChildren().add(codeArea);
+                Platform.runLater(this::initializeNative);
+            }
+            case WEB -> {
+                webView = new WebView();
+                codeArea = null;
+                getChildren().add(webView);
+                Platform.runLater(this::initializePeer);
+            }
+            default -> throw new IllegalArgumentException("Unsupported implementation: " + implementation); // NOI18N.
+        }
+        errorLabel.getStyleClass().add("error-label"); // NOI18N.
+        errorLabel.setMaxWidth(Double.MAX_VALUE);
+        errorLabel.setVisible(false);
+        errorLabel.textProperty().bind(error);
+        getChildren().add(errorLabel);
+        error.addListener(errorInvalidationListener);
+    }
+
+    /**
+     * Initialize the native editor.
+     * <br/>There is nothing to load, the editor is ready at once.
+     */
+    private void initializeNative() {
+        codeArea.setMode(getMode());
+        codeArea.setText(getText());
+        modeProperty().addListener(_ -> codeArea.setMode(getMode()));
+        text.bindBidirectional(codeArea.textProperty());
+        initialized.set(true);
+    }
+
+    /**
+     * Initialize the peer control.
+     */
+    private void initializePeer() {
+        webView.getEngine().getLoadWorker().stateProperty().addListener(peerLoadStateChangeListener);
+        Optional.ofNullable(getClass().getResource("CodeEditor.html")) // NOI18N.
+                .map(URL::toExternalForm)
+                .ifPresent(webView.getEngine()::load);
+    }
+
     /**
      * Called when the state of the web engine loader changes.
+     *
+     * @param oldValue The old state.
+     * @param newValue The new state.
      */
-    private final ChangeListener<Worker.State> peerLoadStateChangeListener = (_, oldValue, newValue) -> {
+    private void peerLoadStateChanged(final Worker.State oldValue, final Worker.State newValue) {
         LOGGER.log(Level.INFO, "%d: %s -> %s%n".formatted(id, oldValue, newValue));
         switch (newValue) {
             case SUCCEEDED -> {
@@ -115,29 +228,6 @@ public class CodeEditor extends Region {
                 LOGGER.log(Level.SEVERE, ex.getMessage(), ex);
             }
         }
-    };
-
-    /**
-     * Creates a new instance.
-     */
-    public CodeEditor() {
-        super();
-        setId("codeEditor"); // NOI18N.
-        getStyleClass().add("code-editor"); // NOI18N.
-        getChildren().add(webView);
-        //
-        initialized.addListener(initializedChangeListener);
-        Platform.runLater(this::initializePeer);
-    }
-
-    /**
-     * Initialize the peer control.
-     */
-    private void initializePeer() {
-        webView.getEngine().getLoadWorker().stateProperty().addListener(peerLoadStateChangeListener);
-        Optional.ofNullable(getClass().getResource("CodeEditor.html")) // NOI18N.
-                .map(URL::toExternalForm)
-                .ifPresent(webView.getEngine()::load);
     }
 
     public boolean isInitialized() {
@@ -158,7 +248,15 @@ public class CodeEditor extends Region {
         final double width = getWidth();
         final double height = getHeight();
         final Insets insets = getInsets();
-        webView.resizeRelocate(insets.getLeft(), insets.getTop(), width - (insets.getLeft() + insets.getRight()), height - (insets.getTop() + insets.getBottom()));
+        final var contentWidth = width - (insets.getLeft() + insets.getRight());
+        var contentHeight = height - (insets.getTop() + insets.getBottom());
+        if (errorLabel.isVisible()) {
+            final var errorHeight = Math.min(errorLabel.prefHeight(contentWidth), contentHeight / 2);
+            contentHeight -= errorHeight;
+            errorLabel.resizeRelocate(insets.getLeft(), insets.getTop() + contentHeight, contentWidth, errorHeight);
+        }
+        final Node content = Objects.isNull(webView) ? codeArea : webView;
+        content.resizeRelocate(insets.getLeft(), insets.getTop(), contentWidth, contentHeight);
     }
 
     /**
@@ -173,49 +271,123 @@ public class CodeEditor extends Region {
     }
 
     /**
-     * Clear the content of the HTML5 peer.
+     * Push text from this control to our HTML5 peer.
+     * <br/>The whole text is only sent the first time; afterward only the range that differs from the content of the peer is replaced.
      */
-    private void clearPeerContent() {
+    private void pushTextToPeer() {
+        final var text = Optional.ofNullable(getText())
+                .orElse("") // NOI18N.
+                .replace("\r\n", "\n") // NOI18N.
+                .replace('\r', '\n');
         try {
             isEditing = true;
-            webView.getEngine().executeScript("clearText()"); // NOI18N.
+            if (!peerLoaded) {
+                sendText("setText(java.getOutgoingText());", text); // NOI18N.
+                document.setLength(0);
+                document.append(text);
+                peerLoaded = true;
+                return;
+            }
+            // Common prefix and suffix.
+            final var length = document.length();
+            var start = 0;
+            while (start < length && start < text.length() && document.charAt(start) == text.charAt(start)) {
+                start++;
+            }
+            var end = 0;
+            while (end < length - start && end < text.length() - start && document.charAt(length - 1 - end) == text.charAt(text.length() - 1 - end)) {
+                end++;
+            }
+            if (start == length && start == text.length()) {
+                return;
+            }
+            final var inserted = text.substring(start, text.length() - end);
+            sendText(String.format("replaceText(%d, %d, java.getOutgoingText());", start, length - end), inserted); // NOI18N.
+            document.replace(start, length - end, inserted);
         } finally {
             isEditing = false;
         }
     }
 
     /**
-     * Push text from this control to our HTML5 peer.
+     * Runs a script that reads a text from the bridge object.
+     * <br/>The text is handed over as a Java string and is never escaped nor parsed as part of the script.
+     *
+     * @param script The script, which calls {@code java.getOutgoingText()}.
+     * @param text   The text.
      */
-    private void pushTextToPeer() {
-        Optional.ofNullable(getText())
-                .ifPresent(text -> {
-                    try {
-                        isEditing = true;
-                        final String content = text
-                                .replaceAll("\\\\", "\\\\\\\\") // NOI18N.
-                                .replaceAll("\n", "\\\\n") // NOI18N.
-                                .replaceAll("'", "\\\\'"); // NOI18N.
-                        final String command = String.format("setText('%s');", content); // NOI18N.
-                        webView.getEngine().executeScript(command);
-                    } finally {
-                        isEditing = false;
-                    }
-                });
+    private void sendText(final String script, final String text) {
+        outgoingText = text;
+        try {
+            webView.getEngine().executeScript(script);
+        } finally {
+            outgoingText = null;
+        }
     }
 
     ////////////////////////////////////////////////////////////////////////////
 
     /**
-     * Pull text from our HTML5 peer to this control.
+     * Applies a change made in our HTML5 peer to this control.
+     * <br/>Coordinates are those of the document before the change.
+     *
+     * @param fromLine The line where the change starts.
+     * @param fromCh   The character in the line where the change starts.
+     * @param toLine   The line where the change ends.
+     * @param toCh     The character in the line where the change ends.
+     * @param inserted The inserted text.
      */
-    private void pullTextFromPeer() {
+    private void applyPeerChange(final int fromLine, final int fromCh, final int toLine, final int toCh, final String inserted) {
         if (isEditing) {
             return;
         }
+        final var start = offsetOf(0, 0, fromLine, fromCh);
+        final var end = (start < 0) ? -1 : offsetOf(start - fromCh, fromLine, toLine, toCh);
+        if (end < start) {
+            // Out of sync, should not happen.
+            LOGGER.log(Level.WARNING, "Code editor out of sync with its peer, reloading the whole text.");
+            pullTextFromPeer();
+            return;
+        }
+        document.replace(start, end, inserted);
+        try {
+            isEditing = true;
+            setText(document.toString());
+        } finally {
+            isEditing = false;
+        }
+    }
+
+    /**
+     * Converts a line and character position into an offset in the document.
+     *
+     * @param lineOffset The offset of the start of a known line, at or before the target line.
+     * @param lineIndex  The index of that known line.
+     * @param line       The target line.
+     * @param ch         The character in the target line.
+     * @return The offset, {@code -1} if the position is out of the document.
+     */
+    private int offsetOf(final int lineOffset, final int lineIndex, final int line, final int ch) {
+        var offset = lineOffset;
+        for (int index = lineIndex; index < line; index++) {
+            offset = document.indexOf("\n", offset); // NOI18N.
+            if (offset < 0) {
+                return -1;
+            }
+            offset++;
+        }
+        return (offset + ch <= document.length()) ? offset + ch : -1;
+    }
+
+    /**
+     * Pull the whole text from our HTML5 peer to this control.
+     */
+    private void pullTextFromPeer() {
         try {
             isEditing = true;
             final String result = (String) webView.getEngine().executeScript("getText()"); // NOI18N.
+            document.setLength(0);
+            document.append(result);
             setText(result);
         } finally {
             isEditing = false;
@@ -246,6 +418,24 @@ public class CodeEditor extends Region {
         return text;
     }
 
+    public final String getError() {
+        return error.get();
+    }
+
+    /**
+     * Sets the error found in the content of this editor.
+     * <br/>The error is displayed under the editor until it is set to {@code null}.
+     *
+     * @param value The error, may be {@code null}.
+     */
+    public final void setError(final String value) {
+        error.set(value);
+    }
+
+    public final StringProperty errorProperty() {
+        return error;
+    }
+
     public final EventHandler<ActionEvent> getOnInitialized() {
         return onInitialized.get();
     }
@@ -268,6 +458,38 @@ public class CodeEditor extends Region {
         XML, CSS
     }
 
+    /**
+     * Implementations of this editor.
+     *
+     * @author Fabrice Bouyé (fabriceb@spc.int)
+     */
+    public enum Implementation {
+
+        /**
+         * CodeMirror in an embedded browser.
+         */
+        WEB,
+        /**
+         * Lightweight editor made only of JavaFX controls; starts faster and uses far less memory, but offers fewer editing features.
+         */
+        NATIVE;
+
+        /**
+         * Gets the implementation set by the {@value #IMPLEMENTATION_PROPERTY} system property.
+         *
+         * @return An {@code Implementation} instance, never {@code null}; {@link #WEB} if the property is not set or invalid.
+         */
+        public static Implementation getDefault() {
+            final var value = System.getProperty(IMPLEMENTATION_PROPERTY, WEB.name());
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException ex) {
+                LOGGER.log(Level.WARNING, ex.getMessage(), ex);
+                return WEB;
+            }
+        }
+    }
+
     /**
      * The bridge class that is provided to JavaScript for bidirectional dialog.
      * <br/>Had to be public to avoid some exceptions from being thrown.
@@ -276,10 +498,26 @@ public class CodeEditor extends Region {
      */
     public final class Bridge {
 
-        public void updateText() {
-            LOGGER.entering(Bridge.class.getName(), "updateText");
-            pullTextFromPeer();
-            LOGGER.exiting(Bridge.class.getName(), "updateText");
+        /**
+         * Called by the peer to read the text being sent to it.
+         *
+         * @return A {@code String} instance, may be {@code null}.
+         */
+        public String getOutgoingText() {
+            return outgoingText;
+        }
+
+        /**
+         * Called by the peer for each change made to its content.
+         *
+         * @param fromLine The line where the change starts.
+         * @param fromCh   The character in the line where the change starts.
+         * @param toLine   The line where the change ends.
+         * @param toCh     The character in the line where the change ends.
+         * @param text     The inserted text.
+         */
+        public void applyChange(final int fromLine, final int fromCh, final int toLine, final int toCh, final String text) {
+            applyPeerChange(fromLine, fromCh, toLine, toCh, text);
         }
     }
 }
@@ -0,0 +1,155 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign.control.codeeditor;
+
+/**
+ * Tokenizer for CSS.
+ * <br/>The state holds the nesting depth of blocks, whether a declaration value is being read and whether a comment is open.
+ * <br/>Style classes match the ones used by CodeMirror.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+final class CssTokenizer implements Tokenizer {
+
+    private static final int DEPTH_MASK = 0xFF;
+    private static final int IN_VALUE = 0x100;
+    private static final int IN_COMMENT = 0x200;
+
+    @Override
+    public int tokenize(final String line, final int state, final TokenHandler handler) {
+        var depth = state & DEPTH_MASK;
+        var inValue = (state & IN_VALUE) != 0;
+        var inComment = (state & IN_COMMENT) != 0;
+        final var length = line.length();
+        var index = 0;
+        while (index < length) {
+            final var c = line.charAt(index);
+            // Comments.
+            if (inComment || (c == '/' && index + 1 < length && line.charAt(index + 1) == '*')) {
+                final var end = line.indexOf("*/", inComment ? index : index + 2); // NOI18N.
+                final var stop = (end < 0) ? length : end + 2;
+                handler.handle(index, stop, "comment"); // NOI18N.
+                inComment = end < 0;
+                index = stop;
+                continue;
+            }
+            // Strings.
+            if (c == '"' || c == '\'') {
+                final var end = line.indexOf(c, index + 1);
+                final var stop = (end < 0) ? length : end + 1;
+                handler.handle(index, stop, "string"); // NOI18N.
+                index = stop;
+                continue;
+            }
+            switch (c) {
+                case '{' -> {
+                    depth = Math.min(depth + 1, DEPTH_MASK);
+                    inValue = false;
+                    index++;
+                }
+                case '}' -> {
+                    depth = Math.max(depth - 1, 0);
+                    inValue = false;
+                    index++;
+                }
+                case ';' -> {
+                    inValue = false;
+                    index++;
+                }
+                case '@' -> {
+                    final var stop = endOfWord(line, index + 1);
+                    handler.handle(index, stop, "def"); // NOI18N.
+                    index = stop;
+                }
+                default -> index = (depth == 0) ? selector(line, index, handler) : declaration(line, index, inValue, handler);
+            }
+            // The colon after a property starts its value.
+            if (depth > 0 && !inValue && index > 0 && line.charAt(index - 1) == ':') {
+                inValue = true;
+            }
+        }
+        return depth | (inValue ? IN_VALUE : 0) | (inComment ? IN_COMMENT : 0);
+    }
+
+    /**
+     * Reads a token of a selector.
+     *
+     * @param line    The line.
+     * @param index   The index of the token.
+     * @param handler The token handler.
+     * @return The index after the token.
+     */
+    private static int selector(final String line, final int index, final TokenHandler handler) {
+        final var c = line.charAt(index);
+        if ((c == '.' || c == '#' || c == ':') && index + 1 < line.length() && isWordCharacter(line.charAt(index + 1))) {
+            final var stop = endOfWord(line, index + 1);
+            handler.handle(index, stop, (c == '#') ? "builtin" : "qualifier"); // NOI18N.
+            return stop;
+        }
+        if (isWordCharacter(c)) {
+            final var stop = endOfWord(line, index);
+            handler.handle(index, stop, "tag"); // NOI18N.
+            return stop;
+        }
+        return index + 1;
+    }
+
+    /**
+     * Reads a token of a declaration.
+     *
+     * @param line    The line.
+     * @param index   The index of the token.
+     * @param inValue {@code True} if the value of the declaration is being read.
+     * @param handler The token handler.
+     * @return The index after the token.
+     */
+    private static int declaration(final String line, final int index, final boolean inValue, final TokenHandler handler) {
+        final var c = line.charAt(index);
+        if (!inValue) {
+            if (isWordCharacter(c)) {
+                final var stop = endOfWord(line, index);
+                handler.handle(index, stop, "property"); // NOI18N.
+                return stop;
+            }
+            return index + 1;
+        }
+        final var next = (index + 1 < line.length()) ? line.charAt(index + 1) : 0;
+        if (Character.isDigit(c) || ((c == '-' || c == '.') && Character.isDigit(next))) {
+            final var stop = endOfWord(line, index + 1);
+            handler.handle(index, stop, "number"); // NOI18N.
+            return stop;
+        }
+        if (c == '#' && isWordCharacter(next)) {
+            final var stop = endOfWord(line, index + 1);
+            handler.handle(index, stop, "atom"); // NOI18N.
+            return stop;
+        }
+        if (c == '!' && isWordCharacter(next)) {
+            final var stop = endOfWord(line, index + 1);
+            handler.handle(index, stop, "keyword"); // NOI18N.
+            return stop;
+        }
+        if (isWordCharacter(c)) {
+            final var stop = endOfWord(line, index);
+            // Functions, such as rgba() or derive(), are not styled as values.
+            handler.handle(index, stop, (stop < line.length() && line.charAt(stop) == '(') ? "variable-2" : "atom"); // NOI18N.
+            return stop;
+        }
+        return index + 1;
+    }
+
+    private static boolean isWordCharacter(final int c) {
+        return Character.isLetterOrDigit(c) || c == '-' || c == '_';
+    }
+
+    private static int endOfWord(final String line, final int index) {
+        var result = index;
+        while (result < line.length() && isWordCharacter(line.charAt(result))) {
+            result++;
+        }
+        return result;
+    }
+}
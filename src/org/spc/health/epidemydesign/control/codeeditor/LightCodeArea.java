@@ -0,0 +1,542 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign.control.codeeditor;
+
+import javafx.beans.InvalidationListener;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.StringProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+import javafx.geometry.Insets;
+import javafx.scene.Node;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.scene.input.Clipboard;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Region;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextFlow;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Lightweight code editor made only of JavaFX controls.
+ * <br/>Lines are displayed in a list view, so only the visible lines have nodes; the line under the caret is edited in a text field.
+ * <br/>The state of the tokenizer at the start of each line is kept, so that an edit only tokenizes the lines whose state changed.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+final class LightCodeArea extends Region {
+
+    /**
+     * Content of the editor, with lines separated by {@code \n}.
+     */
+    private final StringProperty text = new SimpleStringProperty(this, "text", ""); // NOI18N.
+    /**
+     * Lines of the document.
+     */
+    private final ObservableList<String> lines = FXCollections.observableArrayList(""); // NOI18N.
+    private final ListView<String> listView = new ListView<>();
+    private Tokenizer tokenizer = Tokenizer.PLAIN;
+    /**
+     * State of the tokenizer at the start of each line, {@code -1} if not known yet.
+     */
+    private int[] lineStates = {Tokenizer.INITIAL_STATE};
+    private int lineStateCount = 1;
+    /**
+     * Index of the line being edited, {@code -1} if none.
+     */
+    private int editedLine = -1;
+    /**
+     * Current content of the line being edited.
+     */
+    private String editedText;
+    /**
+     * Caret position to use when the next line edit starts, {@code -1} to put the caret at the end of the line.
+     */
+    private int pendingCaret = -1;
+    /**
+     * Depth of nested changes to the lines; the text is updated once the outermost change is done.
+     */
+    private int changeDepth = 0;
+    private boolean isUpdating = false;
+    /**
+     * Called whenever the text is invalidated.
+     */
+    private final InvalidationListener textInvalidationListener = _ -> {
+        if (!isUpdating) {
+            try {
+                isUpdating = true;
+                setLines(Optional.ofNullable(getText()).orElse("")); // NOI18N.
+            } finally {
+                isUpdating = false;
+            }
+        }
+    };
+    /**
+     * Called whenever the lines change.
+     */
+    private final ListChangeListener<String> linesChangeListener = change -> {
+        var from = Integer.MAX_VALUE;
+        while (change.next()) {
+            shiftLineStates(change.getFrom(), change.getRemovedSize(), change.getAddedSize());
+            from = Math.min(from, change.getFrom());
+        }
+        updateLineStates(from);
+        pushText();
+    };
+
+    /**
+     * Creates a new instance.
+     */
+    LightCodeArea() {
+        super();
+        getStyleClass().add("light-code-area"); // NOI18N.
+        Optional.ofNullable(LightCodeArea.class.getResource("LightCodeArea.css")) // NOI18N.
+                .map(URL::toExternalForm)
+                .ifPresent(getStylesheets()::add);
+        // Line states must be updated before the list view updates its cells.
+        lines.addListener(linesChangeListener);
+        listView.setItems(lines);
+        listView.setEditable(true);
+        listView.setCellFactory(_ -> new LineCell());
+        listView.addEventHandler(KeyEvent.KEY_PRESSED, event -> {
+            final var index = listView.getSelectionModel().getSelectedIndex();
+            if (listView.getEditingIndex() < 0 && index >= 0 && (event.getCode() == KeyCode.ENTER || event.getCode() == KeyCode.F2)) {
+                listView.edit(index);
+                event.consume();
+            }
+        });
+        getChildren().add(listView);
+        text.addListener(textInvalidationListener);
+    }
+
+    @Override
+    protected void layoutChildren() {
+        super.layoutChildren();
+        final Insets insets = getInsets();
+        listView.resizeRelocate(insets.getLeft(), insets.getTop(), getWidth() - (insets.getLeft() + insets.getRight()), getHeight() - (insets.getTop() + insets.getBottom()));
+    }
+
+    /**
+     * Sets the syntax highlight mode.
+     *
+     * @param mode The mode, may be {@code null}.
+     */
+    void setMode(final CodeEditor.Mode mode) {
+        tokenizer = switch (mode) {
+            case CSS -> new CssTokenizer();
+            case XML -> new XmlTokenizer();
+            case null -> Tokenizer.PLAIN;
+        };
+        Arrays.fill(lineStates, 0, lineStateCount, -1);
+        updateLineStates(0);
+        listView.refresh();
+    }
+
+    /**
+     * Replaces the lines of the document with the lines of the given text.
+     * <br/>Only the lines between the common first and last lines are replaced.
+     *
+     * @param value The text.
+     */
+    private void setLines(final String value) {
+        final var newLines = value.split("\r\n|\r|\n", -1); // NOI18N.
+        final var size = lines.size();
+        var start = 0;
+        while (start < size && start < newLines.length && lines.get(start).equals(newLines[start])) {
+            start++;
+        }
+        var end = 0;
+        while (end < size - start && end < newLines.length - start && lines.get(size - 1 - end).equals(newLines[newLines.length - 1 - end])) {
+            end++;
+        }
+        replaceLines(start, size - end, Arrays.asList(newLines).subList(start, newLines.length - end));
+    }
+
+    /**
+     * Replaces a range of lines.
+     * <br/>Lines are always replaced as a whole, the text is updated once.
+     *
+     * @param from        Index of the first replaced line.
+     * @param to          Index after the last replaced line.
+     * @param replacement The new lines.
+     */
+    private void replaceLines(final int from, final int to, final List<String> replacement) {
+        if (lines.subList(from, to).equals(replacement)) {
+            return;
+        }
+        listView.edit(-1);
+        try {
+            changeDepth++;
+            if (to > from) {
+                lines.remove(from, to);
+            }
+            lines.addAll(from, replacement);
+            // There is always at least one line.
+            if (lines.isEmpty()) {
+                lines.add(""); // NOI18N.
+            }
+        } finally {
+            changeDepth--;
+        }
+        pushText();
+    }
+
+    /**
+     * Replaces a range of lines and starts editing a line.
+     *
+     * @param from        Index of the first replaced line.
+     * @param to          Index after the last replaced line.
+     * @param replacement The new lines.
+     * @param line        The line to edit.
+     * @param caret       The caret position in the edited line.
+     */
+    private void replaceLinesAndEdit(final int from, final int to, final List<String> replacement, final int line, final int caret) {
+        // The edited text is part of the replacement.
+        editedLine = -1;
+        editedText = null;
+        listView.edit(-1);
+        replaceLines(from, to, replacement);
+        pendingCaret = caret;
+        listView.getSelectionModel().select(line);
+        listView.edit(line);
+    }
+
+    /**
+     * Updates the text from the lines.
+     */
+    private void pushText() {
+        if (isUpdating || changeDepth > 0) {
+            return;
+        }
+        final var builder = new StringBuilder();
+        for (int index = 0; index < lines.size(); index++) {
+            if (index > 0) {
+                builder.append('\n');
+            }
+            builder.append((index == editedLine) ? editedText : lines.get(index));
+        }
+        try {
+            isUpdating = true;
+            setText(builder.toString());
+        } finally {
+            isUpdating = false;
+        }
+    }
+
+    /**
+     * Keeps the line states aligned with the lines after a change.
+     * <br/>States of the added lines are unknown.
+     *
+     * @param from    Index of the change.
+     * @param removed Number of removed lines.
+     * @param added   Number of added lines.
+     */
+    private void shiftLineStates(final int from, final int removed, final int added) {
+        final var count = lineStateCount - removed + added;
+        if (count > lineStates.length) {
+            lineStates = Arrays.copyOf(lineStates, Math.max(count, lineStates.length * 2));
+        }
+        System.arraycopy(lineStates, from + removed, lineStates, from + added, lineStateCount - from - removed);
+        Arrays.fill(lineStates, from, from + added, -1);
+        lineStateCount = count;
+    }
+
+    /**
+     * Tokenizes the lines from the given line on, until a line starts with the same state as before.
+     *
+     * @param from Index of the first line which may have changed.
+     */
+    private void updateLineStates(final int from) {
+        if (from >= lineStateCount) {
+            return;
+        }
+        var state = (from == 0) ? Tokenizer.INITIAL_STATE : tokenizer.tokenize(lines.get(from - 1), lineStates[from - 1], Tokenizer.TokenHandler.NONE);
+        var restyled = false;
+        for (int index = from; index < lineStateCount; index++) {
+            final var previousState = lineStates[index];
+            if (previousState == state) {
+                break;
+            }
+            // A line that was not edited starts with another state, it must be displayed again.
+            restyled |= previousState >= 0;
+            lineStates[index] = state;
+            state = tokenizer.tokenize(lines.get(index), state, Tokenizer.TokenHandler.NONE);
+        }
+        if (restyled) {
+            listView.refresh();
+        }
+    }
+
+    public String getText() {
+        return text.get();
+    }
+
+    public void setText(final String value) {
+        text.set(value);
+    }
+
+    public StringProperty textProperty() {
+        return text;
+    }
+
+    /**
+     * Displays and edits a line.
+     *
+     * @author Fabrice Bouyé (fabriceb@spc.int)
+     */
+    private final class LineCell extends ListCell<String> {
+
+        private final Label lineNumber = new Label();
+        private final TextFlow textFlow = new TextFlow();
+        private final HBox graphic = new HBox(lineNumber, textFlow);
+        private TextField textField;
+        /**
+         * {@code True} while the edit is cancelled with the Escape key.
+         */
+        private boolean isReverting = false;
+
+        LineCell() {
+            super();
+            getStyleClass().add("line-cell"); // NOI18N.
+            lineNumber.getStyleClass().add("line-number"); // NOI18N.
+            addEventHandler(MouseEvent.MOUSE_PRESSED, this::startEditAt);
+        }
+
+        @Override
+        protected void updateItem(final String item, final boolean empty) {
+            super.updateItem(item, empty);
+            setText(null);
+            if (empty || Objects.isNull(item)) {
+                setGraphic(null);
+            } else if (isEditing()) {
+                setGraphic(textField);
+            } else {
+                displayLine(item);
+                setGraphic(graphic);
+            }
+        }
+
+        @Override
+        public void startEdit() {
+            super.startEdit();
+            if (!isEditing()) {
+                return;
+            }
+            if (Objects.isNull(textField)) {
+                textField = createTextField();
+            }
+            final var item = getItem();
+            editedLine = getIndex();
+            editedText = item;
+            textField.setText(item);
+            setGraphic(textField);
+            textField.requestFocus();
+            textField.positionCaret((pendingCaret < 0) ? item.length() : Math.min(pendingCaret, item.length()));
+            pendingCaret = -1;
+        }
+
+        @Override
+        public void cancelEdit() {
+            final var line = editedLine;
+            final var typed = editedText;
+            final var revert = isReverting;
+            isReverting = false;
+            super.cancelEdit();
+            editedLine = -1;
+            editedText = null;
+            // The list view also cancels the edit when another line is clicked or when the edited line is scrolled out of view.
+            // Only the Escape key discards the typed text; otherwise, the typed text is kept.
+            if (Objects.nonNull(typed) && line >= 0 && line < lines.size() && !typed.equals(lines.get(line))) {
+                if (revert) {
+                    // Typed text was already pushed.
+                    pushText();
+                } else {
+                    lines.set(line, typed);
+                }
+            }
+            if (!isEmpty()) {
+                displayLine(getItem());
+                setGraphic(graphic);
+            }
+        }
+
+        @Override
+        public void commitEdit(final String value) {
+            editedLine = -1;
+            editedText = null;
+            super.commitEdit(value);
+        }
+
+        /**
+         * Starts editing the line at the position of the mouse.
+         *
+         * @param event The mouse event.
+         */
+        private void startEditAt(final MouseEvent event) {
+            if (isEditing()) {
+                return;
+            }
+            if (isEmpty()) {
+                // Below the last line.
+                pendingCaret = -1;
+                getListView().edit(lines.size() - 1);
+            } else {
+                pendingCaret = textFlow.hitTest(textFlow.sceneToLocal(event.getSceneX(), event.getSceneY())).getInsertionIndex();
+                getListView().edit(getIndex());
+            }
+        }
+
+        /**
+         * Displays the tokens of a line.
+         *
+         * @param line The line.
+         */
+        private void displayLine(final String line) {
+            final var index = getIndex();
+            lineNumber.setText(String.valueOf(index + 1));
+            final var state = (index < lineStateCount && lineStates[index] >= 0) ? lineStates[index] : Tokenizer.INITIAL_STATE;
+            final var children = new ArrayList<Node>();
+            final var position = new int[]{0};
+            tokenizer.tokenize(line, state, (start, end, styleClass) -> {
+                if (start > position[0]) {
+                    children.add(new Text(line.substring(position[0], start)));
+                }
+                final var token = new Text(line.substring(start, end));
+                token.getStyleClass().add(styleClass);
+                children.add(token);
+                position[0] = end;
+            });
+            if (position[0] < line.length()) {
+                children.add(new Text(line.substring(position[0])));
+            }
+            textFlow.getChildren().setAll(children);
+        }
+
+        private TextField createTextField() {
+            final var result = new TextField() {
+                @Override
+                public void paste() {
+                    final var clipboard = Clipboard.getSystemClipboard();
+                    final var content = clipboard.hasString() ? clipboard.getString() : null;
+                    if (Objects.nonNull(content) && (content.indexOf('\n') >= 0 || content.indexOf('\r') >= 0)) {
+                        pasteLines(this, content);
+                    } else {
+                        super.paste();
+                    }
+                }
+            };
+            result.getStyleClass().add("line-editor"); // NOI18N.
+            result.textProperty().addListener((_, _, newValue) -> {
+                if (isEditing() && editedLine == getIndex()) {
+                    editedText = newValue;
+                    pushText();
+                }
+            });
+            result.focusedProperty().addListener((_, _, newValue) -> {
+                if (!newValue && isEditing()) {
+                    commitEdit(result.getText());
+                }
+            });
+            result.addEventFilter(KeyEvent.KEY_PRESSED, event -> handleKey(result, event));
+            return result;
+        }
+
+        /**
+         * Handles the keys that move between lines, split lines or join them.
+         *
+         * @param field The text field.
+         * @param event The key event.
+         */
+        private void handleKey(final TextField field, final KeyEvent event) {
+            final var index = getIndex();
+            final var value = field.getText();
+            final var caret = field.getCaretPosition();
+            final var hasSelection = field.getSelection().getLength() > 0;
+            switch (event.getCode()) {
+                case ENTER -> {
+                    // Keep the indentation of the line.
+                    var indent = 0;
+                    while (indent < caret && Character.isWhitespace(value.charAt(indent))) {
+                        indent++;
+                    }
+                    final var head = value.substring(0, caret);
+                    final var tail = value.substring(0, indent) + value.substring(caret);
+                    replaceLinesAndEdit(index, index + 1, List.of(head, tail), index + 1, indent);
+                }
+                case ESCAPE -> {
+                    isReverting = true;
+                    cancelEdit();
+                }
+                case UP -> {
+                    if (index == 0) {
+                        return;
+                    }
+                    replaceLinesAndEdit(index, index + 1, List.of(value), index - 1, caret);
+                }
+                case DOWN -> {
+                    if (index >= lines.size() - 1) {
+                        return;
+                    }
+                    replaceLinesAndEdit(index, index + 1, List.of(value), index + 1, caret);
+                }
+                case BACK_SPACE -> {
+                    if (index == 0 || caret > 0 || hasSelection) {
+                        return;
+                    }
+                    final var previous = lines.get(index - 1);
+                    replaceLinesAndEdit(index - 1, index + 1, List.of(previous + value), index - 1, previous.length());
+                }
+                case DELETE -> {
+                    if (index >= lines.size() - 1 || caret < value.length() || hasSelection) {
+                        return;
+                    }
+                    replaceLinesAndEdit(index, index + 2, List.of(value + lines.get(index + 1)), index, value.length());
+                }
+                default -> {
+                    return;
+                }
+            }
+            event.consume();
+        }
+
+        /**
+         * Pastes text spanning several lines.
+         *
+         * @param field   The text field.
+         * @param content The pasted text.
+         */
+        private void pasteLines(final TextField field, final String content) {
+            final var index = getIndex();
+            final var value = field.getText();
+            final var selection = field.getSelection();
+            final var pasted = content.split("\r\n|\r|\n", -1); // NOI18N.
+            final var head = value.substring(0, selection.getStart());
+            final var tail = value.substring(selection.getEnd());
+            final var replacement = new ArrayList<String>(pasted.length);
+            for (int line = 0; line < pasted.length; line++) {
+                final var prefix = (line == 0) ? head : ""; // NOI18N.
+                final var suffix = (line == pasted.length - 1) ? tail : ""; // NOI18N.
+                replacement.add(prefix + pasted[line] + suffix);
+            }
+            final var last = pasted.length - 1;
+            final var caret = ((last == 0) ? head.length() : 0) + pasted[last].length();
+            replaceLinesAndEdit(index, index + 1, replacement, index + last, caret);
+        }
+    }
+}
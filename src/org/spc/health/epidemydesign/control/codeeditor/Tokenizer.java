@@ -0,0 +1,60 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign.control.codeeditor;
+
+/**
+ * Splits the lines of a document into styled tokens.
+ * <br/>Lines are tokenized one at a time, starting from the state reached at the end of the previous line.
+ * <br/>After an edit, only the edited lines and the following lines whose starting state changed need to be tokenized again.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+interface Tokenizer {
+
+    /**
+     * State at the start of the document.
+     */
+    int INITIAL_STATE = 0;
+
+    /**
+     * Tokenizer that produces no token.
+     */
+    Tokenizer PLAIN = (_, state, _) -> state;
+
+    /**
+     * Tokenizes a line.
+     *
+     * @param line    The line, without line break.
+     * @param state   The state at the start of the line.
+     * @param handler Receives the tokens, in the order they appear in the line; text between tokens is not styled.
+     * @return The state at the end of the line, never negative.
+     */
+    int tokenize(final String line, final int state, final TokenHandler handler);
+
+    /**
+     * Receives the tokens of a line.
+     *
+     * @author Fabrice Bouyé (fabriceb@spc.int)
+     */
+    @FunctionalInterface
+    interface TokenHandler {
+
+        /**
+         * Handler that ignores all tokens, used when only the state at the end of a line is needed.
+         */
+        TokenHandler NONE = (_, _, _) -> {
+        };
+
+        /**
+         * Receives a token.
+         *
+         * @param start      Index of the first character of the token.
+         * @param end        Index after the last character of the token.
+         * @param styleClass The style class of the token.
+         */
+        void handle(final int start, final int end, final String styleClass);
+    }
+}
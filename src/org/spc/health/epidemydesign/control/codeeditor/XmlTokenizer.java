@@ -0,0 +1,147 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign.control.codeeditor;
+
+/**
+ * Tokenizer for XML.
+ * <br/>The state tells whether text, a tag, an attribute value, a comment, a CDATA section or a processing instruction is being read.
+ * <br/>Style classes match the ones used by CodeMirror.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+final class XmlTokenizer implements Tokenizer {
+
+    private static final int TEXT = INITIAL_STATE;
+    private static final int TAG = 1;
+    private static final int COMMENT = 2;
+    private static final int CDATA = 3;
+    private static final int INSTRUCTION = 4;
+    private static final int DOUBLE_QUOTED_VALUE = 5;
+    private static final int SINGLE_QUOTED_VALUE = 6;
+
+    @Override
+    public int tokenize(final String line, final int state, final TokenHandler handler) {
+        final var length = line.length();
+        var current = state;
+        var index = 0;
+        while (index < length) {
+            switch (current) {
+                case COMMENT -> {
+                    final var stop = until(line, index, 0, "-->", "comment", handler); // NOI18N.
+                    index = (stop < 0) ? length : stop;
+                    current = (stop < 0) ? COMMENT : TEXT;
+                }
+                case CDATA -> {
+                    final var stop = until(line, index, 0, "]]>", "atom", handler); // NOI18N.
+                    index = (stop < 0) ? length : stop;
+                    current = (stop < 0) ? CDATA : TEXT;
+                }
+                case INSTRUCTION -> {
+                    final var stop = until(line, index, 0, ">", "meta", handler); // NOI18N.
+                    index = (stop < 0) ? length : stop;
+                    current = (stop < 0) ? INSTRUCTION : TEXT;
+                }
+                case DOUBLE_QUOTED_VALUE, SINGLE_QUOTED_VALUE -> {
+                    final var quote = (current == DOUBLE_QUOTED_VALUE) ? "\"" : "'"; // NOI18N.
+                    final var stop = until(line, index, 0, quote, "string", handler); // NOI18N.
+                    index = (stop < 0) ? length : stop;
+                    current = (stop < 0) ? current : TAG;
+                }
+                case TAG -> {
+                    final var c = line.charAt(index);
+                    if (c == '>' || (c == '/' && line.startsWith(">", index + 1))) { // NOI18N.
+                        final var stop = (c == '>') ? index + 1 : index + 2;
+                        handler.handle(index, stop, "tag"); // NOI18N.
+                        index = stop;
+                        current = TEXT;
+                    } else if (c == '"' || c == '\'') {
+                        final var stop = until(line, index, 1, String.valueOf(c), "string", handler); // NOI18N.
+                        index = (stop < 0) ? length : stop;
+                        if (stop < 0) {
+                            current = (c == '"') ? DOUBLE_QUOTED_VALUE : SINGLE_QUOTED_VALUE;
+                        }
+                    } else if (isNameCharacter(c)) {
+                        final var stop = endOfName(line, index);
+                        handler.handle(index, stop, "attribute"); // NOI18N.
+                        index = stop;
+                    } else {
+                        index++;
+                    }
+                }
+                default -> {
+                    final var c = line.charAt(index);
+                    if (c == '<') {
+                        if (line.startsWith("<!--", index)) { // NOI18N.
+                            final var stop = until(line, index, 4, "-->", "comment", handler); // NOI18N.
+                            index = (stop < 0) ? length : stop;
+                            current = (stop < 0) ? COMMENT : TEXT;
+                        } else if (line.startsWith("<![CDATA[", index)) { // NOI18N.
+                            final var stop = until(line, index, 9, "]]>", "atom", handler); // NOI18N.
+                            index = (stop < 0) ? length : stop;
+                            current = (stop < 0) ? CDATA : TEXT;
+                        } else if (line.startsWith("<?", index) || line.startsWith("<!", index)) { // NOI18N.
+                            final var stop = until(line, index, 2, ">", "meta", handler); // NOI18N.
+                            index = (stop < 0) ? length : stop;
+                            current = (stop < 0) ? INSTRUCTION : TEXT;
+                        } else {
+                            final var nameStart = line.startsWith("</", index) ? index + 2 : index + 1; // NOI18N.
+                            final var stop = endOfName(line, nameStart);
+                            handler.handle(index, stop, "tag"); // NOI18N.
+                            index = stop;
+                            current = TAG;
+                        }
+                    } else if (c == '&') {
+                        final var end = line.indexOf(';', index);
+                        final var stop = (end < 0) ? index + 1 : end + 1;
+                        handler.handle(index, stop, "atom"); // NOI18N.
+                        index = stop;
+                    } else {
+                        index = nextMarkup(line, index);
+                    }
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Reads a token up to and including a delimiter, or up to the end of the line if the delimiter is missing.
+     *
+     * @param line       The line.
+     * @param index      The index of the token.
+     * @param skip       Number of characters to skip before searching the delimiter.
+     * @param delimiter  The delimiter that ends the token.
+     * @param styleClass The style class of the token.
+     * @param handler    The token handler.
+     * @return The index after the token, {@code -1} if the delimiter is missing.
+     */
+    private static int until(final String line, final int index, final int skip, final String delimiter, final String styleClass, final TokenHandler handler) {
+        final var end = line.indexOf(delimiter, index + skip);
+        final var stop = (end < 0) ? line.length() : end + delimiter.length();
+        handler.handle(index, stop, styleClass);
+        return (end < 0) ? -1 : stop;
+    }
+
+    private static int nextMarkup(final String line, final int index) {
+        var result = index + 1;
+        while (result < line.length() && line.charAt(result) != '<' && line.charAt(result) != '&') {
+            result++;
+        }
+        return result;
+    }
+
+    private static boolean isNameCharacter(final int c) {
+        return Character.isLetterOrDigit(c) || c == '-' || c == '_' || c == '.' || c == ':';
+    }
+
+    private static int endOfName(final String line, final int index) {
+        var result = index;
+        while (result < line.length() && isNameCharacter(line.charAt(result))) {
+            result++;
+        }
+        return result;
+    }
+}
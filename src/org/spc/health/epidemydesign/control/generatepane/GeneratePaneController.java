@@ -16,6 +16,7 @@ import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.ProgressBar;
 import javafx.stage.DirectoryChooser;
@@ -53,6 +54,19 @@ public final class GeneratePaneController extends ControllerBase implements Init
         }
     });
 
+    @FXML
+    private CheckBox atlasCheck;
+    /**
+     * Called whenever the atlas check box is toggled.
+     */
+    private final InvalidationListener atlasInvalidationListener = (Observable _) -> Settings.getPrefs().putBoolean("generation.atlas", atlasCheck.isSelected()); // NOI18N.
+    @FXML
+    private CheckBox spriteSheetCheck;
+    /**
+     * Called whenever the sprite sheet check box is toggled.
+     */
+    private final InvalidationListener spriteSheetInvalidationListener = (Observable _) -> Settings.getPrefs().putBoolean("generation.spritesheet", spriteSheetCheck.isSelected()); // NOI18N.
+
     ////////////////////////////////////////////////////////////////////////////
     @FXML
     private ProgressBar generateProgressBar;
@@ -71,6 +85,10 @@ public final class GeneratePaneController extends ControllerBase implements Init
     @Override
     public void initialize(URL url, ResourceBundle rb) {
         targetComboBox.getEditor().textProperty().addListener(targetPathInvalidationListener);
+        atlasCheck.setSelected(Settings.getPrefs().getBoolean("generation.atlas", false)); // NOI18N.
+        atlasCheck.selectedProperty().addListener(atlasInvalidationListener);
+        spriteSheetCheck.setSelected(Settings.getPrefs().getBoolean("generation.spritesheet", false)); // NOI18N.
+        spriteSheetCheck.selectedProperty().addListener(spriteSheetInvalidationListener);
         generateProgressBar.progressProperty().bind(progressProperty());
     }
 
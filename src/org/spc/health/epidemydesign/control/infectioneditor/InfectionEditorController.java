@@ -15,17 +15,19 @@ import javafx.event.EventHandler;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.*;
-import javafx.scene.control.cell.CheckBoxTableCell;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.control.cell.TextFieldTableCell;
 import org.spc.health.epidemydesign.ControllerBase;
 import org.spc.health.epidemydesign.Infection;
+import org.spc.health.epidemydesign.ModelChanges;
 import org.spc.health.epidemydesign.State;
 
 import java.io.File;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.ResourceBundle;
 import java.util.function.Consumer;
@@ -76,29 +78,15 @@ public final class InfectionEditorController extends ControllerBase implements I
 
     ////////////////////////////////////////////////////////////////////////////
     /**
-     * Called whenever the states list changes.
+     * Batches changes made to several infections at once, may be {@code null}.
      */
-    private final ListChangeListener<State> statesListChangeListener = change -> {
-        while (change.next()) {
-            // Remove states.
-            change.getRemoved().forEach(state -> {
-                final var toRemove = infectionTable.getColumns()
-                        .stream()
-                        .filter(tableColumn -> state.equals(tableColumn.getProperties().get("state"))) // NOI18N.
-                        .collect(Collectors.toList());
-                toRemove.forEach(tableColumn -> {
-                    infectionTable.getColumns().remove(tableColumn);
-                    tableColumn.getProperties().remove("state"); // NOI18N.
-                });
-                toRemove.clear();
-            });
-            // Add states.
-            change.getAddedSubList().forEach(state -> {
-                final var tableColumn = createTableColumnForState(state);
-                infectionTable.getColumns().add(tableColumn);
-            });
-        }
-    };
+    private final ObjectProperty<ModelChanges> modelChanges = new SimpleObjectProperty<>(this, "modelChanges"); // NOI18N.
+    @FXML
+    private ScrollBar stateScrollBar;
+    /**
+     * Displays the states of all infections.
+     */
+    private final StateMatrixColumn stateMatrixColumn = new StateMatrixColumn();
     @FXML
     private TableColumn<Infection, String> infectionNameColumn;
     @FXML
@@ -149,7 +137,6 @@ public final class InfectionEditorController extends ControllerBase implements I
      */
     public InfectionEditorController() {
         infections.addListener(infectionsListChangeListener);
-        states.addListener(statesListChangeListener);
         recentFiles.addListener(recentFilesListChangeListener);
     }
 
@@ -170,6 +157,13 @@ public final class InfectionEditorController extends ControllerBase implements I
         infectionFileColumn.setCellFactory(TextFieldTableCell.forTableColumn());
         infectionFileColumn.setEditable(true);
         //
+        stateMatrixColumn.statesProperty().bind(states);
+        stateMatrixColumn.setOnToggleState(this::toggleState);
+        stateMatrixColumn.setOnToggleCell(this::toggleState);
+        stateMatrixColumn.setPrefWidth(10 * StateMatrixColumn.STATE_WIDTH);
+        stateMatrixColumn.bindScrollBar(stateScrollBar);
+        infectionTable.getColumns().add(stateMatrixColumn);
+        //
         addInfectionsButton.disableProperty().bind(Bindings.isEmpty(infectionsField.textProperty()));
         deleteInfectionsButton.disableProperty().bind(Bindings.isEmpty(infectionTable.getSelectionModel().getSelectedCells()));
     }
@@ -230,29 +224,83 @@ public final class InfectionEditorController extends ControllerBase implements I
     }
 
     /**
-     * Create a new columns in the table for a given state.
+     * Called whenever the check all states menu item is clicked.
+     */
+    @FXML
+    private void handleCheckAllStatesMenuItem(final ActionEvent actionEvent) {
+        final var targets = new ArrayList<>(infectionTable.getSelectionModel().getSelectedItems());
+        final var allStates = new ArrayList<>(getStates());
+        applyChanges(() -> targets.forEach(infection -> allStates.forEach(infection::addState)));
+    }
+
+    /**
+     * Called whenever the uncheck all states menu item is clicked.
+     */
+    @FXML
+    private void handleUncheckAllStatesMenuItem(final ActionEvent actionEvent) {
+        final var targets = new ArrayList<>(infectionTable.getSelectionModel().getSelectedItems());
+        final var allStates = new ArrayList<>(getStates());
+        applyChanges(() -> targets.forEach(infection -> allStates.forEach(infection::removeState)));
+    }
+
+    /**
+     * Toggles a state for the selected infections, or for all infections if none is selected.
+     * <br/>The state is removed if all of them have it, added otherwise.
      *
      * @param state The state.
      */
-    private TableColumn<Infection, Boolean> createTableColumnForState(final State state) {
-        final var result = new TableColumn<Infection, Boolean>(state.getName());
-        result.getProperties().put("state", state); // NOI18N.
-        result.setEditable(true);
-        result.setCellValueFactory(features -> {
-            final var infection = features.getValue();
-            final boolean activated = infection.getStates().contains(state);
-            final var property = new SimpleBooleanProperty(activated);
-            property.addListener((_, _, newValue) -> {
-                if (newValue) {
-                    infection.getStates().add(state);
-                } else {
-                    infection.getStates().remove(state);
-                }
-            });
-            return property;
-        });
-        result.setCellFactory(CheckBoxTableCell.forTableColumn(result));
-        return result;
+    private void toggleState(final State state) {
+        final var selection = infectionTable.getSelectionModel().getSelectedItems();
+        final var targets = new ArrayList<>(selection.isEmpty() ? getInfections() : selection);
+        final var remove = targets.stream().allMatch(infection -> infection.hasState(state));
+        applyChanges(() -> targets.forEach(infection -> {
+            if (remove) {
+                infection.removeState(state);
+            } else {
+                infection.addState(state);
+            }
+        }));
+    }
+
+    /**
+     * Toggles a state for a single infection.
+     *
+     * @param infection The infection.
+     * @param state     The state.
+     */
+    private void toggleState(final Infection infection, final State state) {
+        if (infection.hasState(state)) {
+            infection.removeState(state);
+        } else {
+            infection.addState(state);
+        }
+    }
+
+    /**
+     * Applies changes to several infections as a single batch, then repaints the matrix.
+     *
+     * @param changes The changes.
+     */
+    private void applyChanges(final Runnable changes) {
+        final var batch = getModelChanges();
+        if (Objects.isNull(batch)) {
+            changes.run();
+        } else {
+            batch.batch(changes::run);
+        }
+        stateMatrixColumn.refresh();
+    }
+
+    public ModelChanges getModelChanges() {
+        return modelChanges.get();
+    }
+
+    public void setModelChanges(final ModelChanges value) {
+        modelChanges.set(value);
+    }
+
+    public ObjectProperty<ModelChanges> modelChangesProperty() {
+        return modelChanges;
     }
 
     public ObservableList<Infection> getInfections() {
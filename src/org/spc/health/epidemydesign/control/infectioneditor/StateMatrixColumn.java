@@ -0,0 +1,346 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign.control.infectioneditor;
+
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
+import javafx.beans.WeakInvalidationListener;
+import javafx.beans.binding.Bindings;
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.ListProperty;
+import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.beans.property.SimpleDoubleProperty;
+import javafx.beans.property.SimpleListProperty;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.ContentDisplay;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.control.TableCell;
+import javafx.scene.control.TableColumn;
+import javafx.scene.input.MouseButton;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+import org.spc.health.epidemydesign.Infection;
+import org.spc.health.epidemydesign.State;
+
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Table column that displays the infection/state matrix.
+ * <br/>All states are displayed in this single column, which is virtualized horizontally: the header and each cell
+ * only paint the states that are visible at the current scroll offset, rows being virtualized by the table itself.
+ * <br/>Cells read and change the states of infections directly, clicking a state name in the header toggles it for several infections at once.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+final class StateMatrixColumn extends TableColumn<Infection, Infection> {
+
+    /**
+     * Width of a state in the matrix.
+     */
+    static final double STATE_WIDTH = 24;
+    private static final double HEADER_HEIGHT = 90;
+    private static final double BOX_SIZE = 12;
+    private static final Color GRID_COLOR = Color.web("#E0E0E0"); // NOI18N.
+    private static final Color BOX_BORDER_COLOR = Color.web("#A0A0A0"); // NOI18N.
+    private static final Color BOX_FILL_COLOR = Color.web("#0096C9"); // NOI18N.
+    private static final Color TEXT_COLOR = Color.web("#333333"); // NOI18N.
+    /**
+     * The displayed states.
+     */
+    private final ListProperty<State> states = new SimpleListProperty<>(this, "states", FXCollections.observableArrayList()); // NOI18N.
+    /**
+     * Horizontal scroll offset in pixels.
+     */
+    private final DoubleProperty offset = new SimpleDoubleProperty(this, "offset", 0); // NOI18N.
+    /**
+     * Incremented whenever cells must be repainted.
+     */
+    private final ReadOnlyIntegerWrapper revision = new ReadOnlyIntegerWrapper(this, "revision", 0); // NOI18N.
+    /**
+     * Called when a state is clicked in the header.
+     */
+    private final ObjectProperty<Consumer<State>> onToggleState = new SimpleObjectProperty<>(this, "onToggleState"); // NOI18N.
+    /**
+     * Called when a cell is clicked, with the infection and the state.
+     */
+    private final ObjectProperty<BiConsumer<Infection, State>> onToggleCell = new SimpleObjectProperty<>(this, "onToggleCell"); // NOI18N.
+    private final Canvas headerCanvas = new Canvas();
+
+    /**
+     * Creates a new instance.
+     */
+    StateMatrixColumn() {
+        getStyleClass().add("state-matrix-column"); // NOI18N.
+        setSortable(false);
+        setReorderable(false);
+        setCellValueFactory(features -> new ReadOnlyObjectWrapper<>(features.getValue()));
+        setCellFactory(_ -> new StateMatrixCell());
+        // Header.
+        final var header = new Pane(headerCanvas);
+        // The header must not drive the width of the column, the canvas follows the column instead.
+        header.setMinWidth(0);
+        header.setPrefWidth(0);
+        header.setMinHeight(HEADER_HEIGHT);
+        header.setPrefHeight(HEADER_HEIGHT);
+        headerCanvas.setHeight(HEADER_HEIGHT);
+        headerCanvas.widthProperty().bind(widthProperty());
+        headerCanvas.setOnMouseClicked(this::handleHeaderClicked);
+        headerCanvas.setOnScroll(this::handleScroll);
+        setGraphic(header);
+        setText(null);
+        final InvalidationListener headerListener = _ -> repaintHeader();
+        states.addListener(headerListener);
+        offset.addListener(headerListener);
+        headerCanvas.widthProperty().addListener(headerListener);
+        states.addListener((Observable _) -> {
+            clampOffset();
+            refresh();
+        });
+        widthProperty().addListener(_ -> clampOffset());
+    }
+
+    /**
+     * Binds a scroll bar to the horizontal offset of the matrix.
+     *
+     * @param scrollBar The scroll bar.
+     */
+    void bindScrollBar(final ScrollBar scrollBar) {
+        final var maxOffset = Bindings.createDoubleBinding(this::getMaxOffset, states, widthProperty());
+        scrollBar.setMin(0);
+        scrollBar.maxProperty().bind(maxOffset);
+        scrollBar.visibleAmountProperty().bind(widthProperty());
+        scrollBar.blockIncrementProperty().bind(widthProperty());
+        scrollBar.setUnitIncrement(STATE_WIDTH);
+        scrollBar.valueProperty().bindBidirectional(offset);
+        scrollBar.visibleProperty().bind(maxOffset.greaterThan(0));
+        scrollBar.managedProperty().bind(scrollBar.visibleProperty());
+    }
+
+    /**
+     * Repaints all visible cells, after states of infections changed.
+     */
+    void refresh() {
+        revision.set(revision.get() + 1);
+    }
+
+    private double getMaxOffset() {
+        return Math.max(0, states.size() * STATE_WIDTH - getWidth());
+    }
+
+    private void clampOffset() {
+        offset.set(Math.max(0, Math.min(offset.get(), getMaxOffset())));
+    }
+
+    /**
+     * Gets the state displayed at a given X coordinate.
+     *
+     * @param x The X coordinate, relative to the left of the column.
+     * @return A {@code State} instance, {@code null} if there is no state at this location.
+     */
+    private State stateAt(final double x) {
+        final var index = (int) Math.floor((x + offset.get()) / STATE_WIDTH);
+        return (x < 0 || index < 0 || index >= states.size()) ? null : states.get(index);
+    }
+
+    private void handleHeaderClicked(final MouseEvent mouseEvent) {
+        if (mouseEvent.getButton() == MouseButton.PRIMARY) {
+            final var state = stateAt(mouseEvent.getX());
+            if (Objects.nonNull(state) && Objects.nonNull(getOnToggleState())) {
+                getOnToggleState().accept(state);
+                mouseEvent.consume();
+            }
+        }
+    }
+
+    private void handleScroll(final ScrollEvent scrollEvent) {
+        // Horizontal wheel, or vertical wheel with shift pressed.
+        final var delta = (scrollEvent.getDeltaX() != 0) ? scrollEvent.getDeltaX() : (scrollEvent.isShiftDown() ? scrollEvent.getDeltaY() : 0);
+        if (delta != 0) {
+            offset.set(Math.max(0, Math.min(offset.get() - delta, getMaxOffset())));
+            scrollEvent.consume();
+        }
+    }
+
+    /**
+     * Gets the range of visible states.
+     *
+     * @param width The width of the area.
+     * @return The index of the first visible state followed by the index after the last visible state.
+     */
+    private int[] visibleRange(final double width) {
+        final var first = Math.max(0, (int) Math.floor(offset.get() / STATE_WIDTH));
+        final var last = Math.min(states.size(), (int) Math.ceil((offset.get() + width) / STATE_WIDTH));
+        return new int[]{first, Math.max(first, last)};
+    }
+
+    private void repaintHeader() {
+        final var width = headerCanvas.getWidth();
+        final var height = headerCanvas.getHeight();
+        final var gc = headerCanvas.getGraphicsContext2D();
+        gc.clearRect(0, 0, width, height);
+        gc.setFont(Font.getDefault());
+        gc.setFill(TEXT_COLOR);
+        gc.setTextAlign(TextAlignment.LEFT);
+        gc.setTextBaseline(VPos.CENTER);
+        final var range = visibleRange(width);
+        for (int index = range[0]; index < range[1]; index++) {
+            final var x = index * STATE_WIDTH - offset.get();
+            // Names are written from bottom to top.
+            gc.save();
+            gc.beginPath();
+            gc.rect(x, 0, STATE_WIDTH, height);
+            gc.clip();
+            gc.translate(x + STATE_WIDTH / 2, height - 4);
+            gc.rotate(-90);
+            gc.fillText(states.get(index).getName(), 0, 0);
+            gc.restore();
+        }
+    }
+
+    public ObservableList<State> getStates() {
+        return states.get();
+    }
+
+    public void setStates(final ObservableList<State> value) {
+        states.set(value);
+    }
+
+    public ListProperty<State> statesProperty() {
+        return states;
+    }
+
+    public Consumer<State> getOnToggleState() {
+        return onToggleState.get();
+    }
+
+    public void setOnToggleState(final Consumer<State> value) {
+        onToggleState.set(value);
+    }
+
+    public ObjectProperty<Consumer<State>> onToggleStateProperty() {
+        return onToggleState;
+    }
+
+    public BiConsumer<Infection, State> getOnToggleCell() {
+        return onToggleCell.get();
+    }
+
+    public void setOnToggleCell(final BiConsumer<Infection, State> value) {
+        onToggleCell.set(value);
+    }
+
+    public ObjectProperty<BiConsumer<Infection, State>> onToggleCellProperty() {
+        return onToggleCell;
+    }
+
+    /**
+     * Paints the visible states of an infection.
+     *
+     * @author Fabrice Bouyé (fabriceb@spc.int)
+     */
+    private final class StateMatrixCell extends TableCell<Infection, Infection> {
+
+        private final Canvas canvas = new Canvas();
+        /**
+         * Listeners on the column are weak, cells may be dropped by the table at any time.
+         */
+        private final InvalidationListener repaintListener = _ -> repaint();
+
+        StateMatrixCell() {
+            getStyleClass().add("state-matrix-cell"); // NOI18N.
+            setContentDisplay(ContentDisplay.GRAPHIC_ONLY);
+            final var weakRepaintListener = new WeakInvalidationListener(repaintListener);
+            states.addListener(weakRepaintListener);
+            offset.addListener(weakRepaintListener);
+            revision.addListener(weakRepaintListener);
+            canvas.setOnMouseClicked(this::handleMouseClicked);
+            canvas.setOnScroll(StateMatrixColumn.this::handleScroll);
+        }
+
+        @Override
+        protected void updateItem(final Infection infection, final boolean empty) {
+            super.updateItem(infection, empty);
+            setGraphic(empty ? null : canvas);
+            repaint();
+        }
+
+        @Override
+        protected void layoutChildren() {
+            final var width = Math.max(0, getWidth() - snappedLeftInset() - snappedRightInset());
+            final var height = Math.max(0, getHeight() - snappedTopInset() - snappedBottomInset());
+            if (canvas.getWidth() != width || canvas.getHeight() != height) {
+                canvas.setWidth(width);
+                canvas.setHeight(height);
+                repaint();
+            }
+            super.layoutChildren();
+        }
+
+        @Override
+        protected double computePrefWidth(final double height) {
+            return snappedLeftInset() + snappedRightInset();
+        }
+
+        private void handleMouseClicked(final MouseEvent mouseEvent) {
+            final var infection = getItem();
+            if (mouseEvent.getButton() != MouseButton.PRIMARY || Objects.isNull(infection)) {
+                return;
+            }
+            final var state = stateAt(mouseEvent.getX());
+            if (Objects.nonNull(state) && Objects.nonNull(getOnToggleCell())) {
+                getOnToggleCell().accept(infection, state);
+                repaint();
+            }
+        }
+
+        private void repaint() {
+            final var width = canvas.getWidth();
+            final var height = canvas.getHeight();
+            final var gc = canvas.getGraphicsContext2D();
+            gc.clearRect(0, 0, width, height);
+            final var infection = getItem();
+            if (isEmpty() || Objects.isNull(infection)) {
+                return;
+            }
+            final var range = visibleRange(width);
+            final var boxY = Math.round((height - BOX_SIZE) / 2) + 0.5;
+            for (int index = range[0]; index < range[1]; index++) {
+                final var x = index * STATE_WIDTH - offset.get();
+                gc.setStroke(GRID_COLOR);
+                gc.strokeLine(Math.round(x + STATE_WIDTH) - 0.5, 0, Math.round(x + STATE_WIDTH) - 0.5, height);
+                final var boxX = Math.round(x + (STATE_WIDTH - BOX_SIZE) / 2) + 0.5;
+                if (infection.hasState(states.get(index))) {
+                    paintCheckedBox(gc, boxX, boxY);
+                } else {
+                    gc.setStroke(BOX_BORDER_COLOR);
+                    gc.strokeRect(boxX, boxY, BOX_SIZE, BOX_SIZE);
+                }
+            }
+        }
+
+        private void paintCheckedBox(final GraphicsContext gc, final double x, final double y) {
+            gc.setFill(BOX_FILL_COLOR);
+            gc.fillRect(x - 0.5, y - 0.5, BOX_SIZE + 1, BOX_SIZE + 1);
+            gc.setStroke(Color.WHITE);
+            gc.setLineWidth(2);
+            gc.strokePolyline(new double[]{x + 3, x + 5, x + 9}, new double[]{y + 6, y + 9, y + 3}, 3);
+            gc.setLineWidth(1);
+        }
+    }
+}
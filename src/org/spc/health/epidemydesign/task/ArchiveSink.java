@@ -0,0 +1,58 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign.task;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+/**
+ * Base class for sinks that stream all files into a single archive.
+ * <br/>Content is written to a per-thread buffer first so that workers encode in parallel and only the copy into the archive is serialized.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+abstract class ArchiveSink implements OutputSink {
+
+    private final ThreadLocal<ByteArrayOutputStream> buffers = ThreadLocal.withInitial(() -> new ByteArrayOutputStream(8192));
+    /**
+     * The archive output.
+     */
+    protected final OutputStream output;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param file The archive file.
+     * @throws IOException In case of IO error.
+     */
+    protected ArchiveSink(final File file) throws IOException {
+        output = new BufferedOutputStream(Files.newOutputStream(file.toPath()), 65536);
+    }
+
+    @Override
+    public final void write(final String name, final Content content) throws IOException {
+        final var buffer = buffers.get();
+        buffer.reset();
+        content.writeTo(buffer);
+        synchronized (this) {
+            writeEntry(name, buffer);
+        }
+    }
+
+    /**
+     * Appends an entry to the archive.
+     * <br/>This method is invoked by one thread at a time.
+     *
+     * @param name    The name of the entry.
+     * @param content The content of the entry.
+     * @throws IOException In case of IO error.
+     */
+    protected abstract void writeEntry(String name, ByteArrayOutputStream content) throws IOException;
+}
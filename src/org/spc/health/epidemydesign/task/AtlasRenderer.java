@@ -0,0 +1,177 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign.task;
+
+import javafx.css.PseudoClass;
+import javafx.fxml.FXMLLoader;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.Group;
+import javafx.scene.Scene;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.control.Label;
+import javafx.scene.image.Image;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+import javafx.scene.transform.Transform;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Renders a batch of infection/state pairs as tiles laid out in a single scene and captured with a single snapshot.
+ * <br/>Tiles are instantiated from the template once and reused from one batch to the next.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+final class AtlasRenderer {
+
+    /**
+     * Maximum number of tiles in a single atlas.
+     */
+    static final int BATCH_SIZE = 256;
+    /**
+     * Maximum width of a row of tiles in the atlas.
+     */
+    private static final double MAX_ROW_WIDTH = 2048;
+    /**
+     * Transparent gap between two tiles, prevents antialiasing from bleeding into neighbor tiles.
+     */
+    private static final double GAP = 2;
+    private final URL fxmlURL;
+    /**
+     * The stylesheet to use.
+     */
+    private volatile String stylesheet;
+    private String appliedStylesheet;
+    private final int scale;
+    private final List<Region> tiles = new ArrayList<>(BATCH_SIZE);
+    private final List<Label> labels = new ArrayList<>(BATCH_SIZE);
+    private final Pane root = new Pane();
+    private final SnapshotParameters snapshotParameters = new SnapshotParameters();
+    private Scene scene;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param fxmlURL URL of the template FXML.
+     * @param scale   The scale at which tiles are rendered.
+     */
+    AtlasRenderer(final URL fxmlURL, final int scale) {
+        this.fxmlURL = fxmlURL;
+        this.scale = scale;
+        root.setStyle("-fx-background-color: transparent;"); // NOI18N.
+        snapshotParameters.setFill(Color.TRANSPARENT);
+        snapshotParameters.setTransform(Transform.scale(scale, scale));
+    }
+
+    /**
+     * Makes sure enough tiles are available to render a batch.
+     * <br/>This method is invoked on the task thread since tiles are not yet attached to the scene.
+     *
+     * @param count The number of tiles in the batch.
+     * @throws IOException If the template cannot be loaded.
+     */
+    void prepareTiles(final int count) throws IOException {
+        while (tiles.size() < count) {
+            final var fxmlLoader = new FXMLLoader(fxmlURL);
+            final var tile = fxmlLoader.<Region>load();
+            // Tiles are positioned manually.
+            tile.setManaged(false);
+            tiles.add(tile);
+            labels.add((Label) tile.lookup(".label")); // NOI18N.
+        }
+    }
+
+    /**
+     * Sets the stylesheet used by the next renders.
+     * <br/>Tiles are kept, only their style changes.
+     *
+     * @param stylesheet URL of the stylesheet.
+     */
+    void setStylesheet(final String stylesheet) {
+        this.stylesheet = stylesheet;
+    }
+
+    /**
+     * Lays out and renders a batch of entries.
+     * <br/>This method must be invoked on the JavaFX Application Thread.
+     *
+     * @param entries The entries, must not have more elements than the number of prepared tiles.
+     * @return An {@code Atlas} instance, never {@code null}.
+     */
+    Atlas render(final List<GenerationEntry> entries) {
+        if (Objects.isNull(scene)) {
+            scene = new Scene(new Group(root));
+            scene.setFill(Color.TRANSPARENT);
+        }
+        final var currentStylesheet = stylesheet;
+        if (!Objects.equals(currentStylesheet, appliedStylesheet)) {
+            tiles.forEach(tile -> tile.getStylesheets().setAll(currentStylesheet));
+            appliedStylesheet = currentStylesheet;
+        }
+        final var count = entries.size();
+        final var batchTiles = tiles.subList(0, count);
+        root.getChildren().setAll(batchTiles);
+        final var pseudoClasses = new PseudoClass[count];
+        for (int index = 0; index < count; index++) {
+            final var entry = entries.get(index);
+            final var label = labels.get(index);
+            if (Objects.nonNull(label)) {
+                label.setText(entry.infection().getName());
+            }
+            pseudoClasses[index] = PseudoClass.getPseudoClass(entry.state().getName());
+            batchTiles.get(index).pseudoClassStateChanged(pseudoClasses[index], true);
+        }
+        root.applyCss();
+        // Shelf layout: fill rows from left to right.
+        final var bounds = new ArrayList<Rectangle2D>(count);
+        double x = 0;
+        double y = 0;
+        double rowHeight = 0;
+        double atlasWidth = 0;
+        for (final var tile : batchTiles) {
+            final var width = Math.ceil(tile.prefWidth(-1));
+            final var height = Math.ceil(tile.prefHeight(width));
+            if (x > 0 && x + width > MAX_ROW_WIDTH) {
+                x = 0;
+                y += rowHeight + GAP;
+                rowHeight = 0;
+            }
+            tile.resizeRelocate(x, y, width, height);
+            tile.layout();
+            bounds.add(new Rectangle2D(x * scale, y * scale, width * scale, height * scale));
+            atlasWidth = Math.max(atlasWidth, x + width);
+            rowHeight = Math.max(rowHeight, height);
+            x += width + GAP;
+        }
+        final var atlasHeight = y + rowHeight;
+        root.resize(atlasWidth, atlasHeight);
+        // The viewport is expressed after the scale is applied.
+        snapshotParameters.setViewport(new Rectangle2D(0, 0, Math.max(1, atlasWidth * scale), Math.max(1, atlasHeight * scale)));
+        try {
+            final var image = root.snapshot(snapshotParameters, null);
+            return new Atlas(image, bounds);
+        } finally {
+            for (int index = 0; index < count; index++) {
+                batchTiles.get(index).pseudoClassStateChanged(pseudoClasses[index], false);
+            }
+        }
+    }
+
+    /**
+     * Result of an atlas render.
+     *
+     * @param image  The atlas image.
+     * @param bounds Bounds of each tile in the atlas, in pixels, in the same order as the rendered entries.
+     * @author Fabrice Bouyé (fabriceb@spc.int)
+     */
+    record Atlas(Image image, List<Rectangle2D> bounds) {
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign.task;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Reduces an image to a palette of at most 256 colors, alpha included.
+ * <br/>Images that already have 256 distinct colors or less are kept exactly as they are; otherwise the palette is
+ * built with a median cut on the color histogram.
+ * <br/>Colors are counted in an open addressing table of primitive values, so that pixels are neither boxed nor hashed as objects;
+ * once the palette is known, the same table maps each color to its palette index.
+ * <br/>Buffers are reused from one image to the next, which makes instances of this class unsafe to share between threads.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+final class ColorQuantizer {
+
+    /**
+     * Maximum number of colors in a palette.
+     */
+    static final int MAX_COLORS = 256;
+    private static final int CHANNELS = 4;
+    private byte[] indices = new byte[0];
+    /**
+     * Colors of the table, a slot is used if its value is not {@code 0}.
+     */
+    private int[] tableColors = new int[0];
+    /**
+     * Number of pixels of each color while the histogram is built, then palette index of each color plus one.
+     */
+    private int[] tableValues = new int[0];
+    /**
+     * Used slots of the table, in the order the colors were first found.
+     */
+    private int[] usedSlots = new int[0];
+    private int usedCount = 0;
+
+    /**
+     * Quantizes an image.
+     *
+     * @param argb   The non-premultiplied ARGB pixels of the image, row after row.
+     * @param length The number of pixels.
+     * @return A {@code Palette} instance, never {@code null}; its indices array is reused by the next call.
+     */
+    Palette quantize(final int[] argb, final int length) {
+        prepareTable(length);
+        // Histogram, all fully transparent pixels are the same color.
+        for (int index = 0; index < length; index++) {
+            final var color = normalize(argb[index]);
+            final var slot = findSlot(color);
+            if (tableValues[slot] == 0) {
+                tableColors[slot] = color;
+                usedSlots[usedCount++] = slot;
+            }
+            tableValues[slot]++;
+        }
+        final var colors = new ArrayList<ColorCount>(usedCount);
+        for (int index = 0; index < usedCount; index++) {
+            final var slot = usedSlots[index];
+            colors.add(new ColorCount(tableColors[slot], tableValues[slot]));
+        }
+        final var palette = (colors.size() <= MAX_COLORS)
+                ? colors.stream().mapToInt(ColorCount::color).toArray()
+                : medianCut(colors);
+        // Translucent colors first so that the transparency chunk can be shortened.
+        final var sorted = Arrays.stream(palette)
+                .boxed()
+                .sorted(Comparator.comparingInt(color -> color >>> 24))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        // From now on, the table maps each color to its palette index, plus one so that used slots are never 0.
+        for (int index = 0; index < usedCount; index++) {
+            final var slot = usedSlots[index];
+            tableValues[slot] = findNearest(sorted, tableColors[slot]) + 1;
+        }
+        if (indices.length < length) {
+            indices = new byte[length];
+        }
+        // Neighbor pixels often have the same color.
+        var previousColor = 0;
+        var previousIndex = -1;
+        for (int index = 0; index < length; index++) {
+            final var color = normalize(argb[index]);
+            if (previousIndex < 0 || color != previousColor) {
+                previousColor = color;
+                previousIndex = tableValues[findSlot(color)] - 1;
+            }
+            indices[index] = (byte) previousIndex;
+        }
+        return new Palette(sorted, indices);
+    }
+
+    /**
+     * Empties the table and makes sure that it can hold the colors of an image.
+     * <br/>The table is kept at most half full so that probe sequences stay short.
+     *
+     * @param length The number of pixels of the image.
+     */
+    private void prepareTable(final int length) {
+        final var capacity = Integer.highestOneBit(Math.max(8, 2 * length - 1)) << 1;
+        if (tableColors.length < capacity) {
+            tableColors = new int[capacity];
+            tableValues = new int[capacity];
+            usedSlots = new int[capacity / 2];
+        } else {
+            for (int index = 0; index < usedCount; index++) {
+                final var slot = usedSlots[index];
+                tableColors[slot] = 0;
+                tableValues[slot] = 0;
+            }
+        }
+        usedCount = 0;
+    }
+
+    /**
+     * Finds the slot of a color in the table, with linear probing.
+     * <br/>The slot returned for a color that is not in the table is empty.
+     *
+     * @param color The color.
+     * @return The index of the slot.
+     */
+    private int findSlot(final int color) {
+        final var mask = tableColors.length - 1;
+        final var hash = color * 0x9E3779B9;
+        var slot = (hash ^ (hash >>> 16)) & mask;
+        while (tableValues[slot] != 0 && tableColors[slot] != color) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int normalize(final int color) {
+        return ((color >>> 24) == 0) ? 0 : color;
+    }
+
+    /**
+     * Splits the histogram into boxes until there are as many boxes as palette entries.
+     * <br/>The box with the widest channel range is split at the weighted median of that channel.
+     *
+     * @param colors The histogram.
+     * @return The palette, one average color per box.
+     */
+    private static int[] medianCut(final List<ColorCount> colors) {
+        final var boxes = new ArrayList<List<ColorCount>>();
+        boxes.add(colors);
+        while (boxes.size() < MAX_COLORS) {
+            var widestBox = -1;
+            var widestChannel = 0;
+            var widestRange = 0;
+            for (int index = 0; index < boxes.size(); index++) {
+                final var box = boxes.get(index);
+                if (box.size() < 2) {
+                    continue;
+                }
+                for (int channel = 0; channel < CHANNELS; channel++) {
+                    final var range = range(box, channel);
+                    if (range > widestRange) {
+                        widestBox = index;
+                        widestChannel = channel;
+                        widestRange = range;
+                    }
+                }
+            }
+            if (widestBox < 0) {
+                break;
+            }
+            final var box = boxes.get(widestBox);
+            final var channel = widestChannel;
+            box.sort(Comparator.comparingInt(color -> channel(color.color(), channel)));
+            final var total = box.stream().mapToLong(ColorCount::count).sum();
+            long sum = 0;
+            var split = 1;
+            for (; split < box.size() - 1; split++) {
+                sum += box.get(split - 1).count();
+                if (2 * sum >= total) {
+                    break;
+                }
+            }
+            boxes.set(widestBox, new ArrayList<>(box.subList(0, split)));
+            boxes.add(new ArrayList<>(box.subList(split, box.size())));
+        }
+        return boxes.stream()
+                .mapToInt(ColorQuantizer::average)
+                .distinct()
+                .toArray();
+    }
+
+    private static int range(final List<ColorCount> box, final int channel) {
+        int min = 255;
+        int max = 0;
+        for (final var color : box) {
+            final var value = channel(color.color(), channel);
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        return max - min;
+    }
+
+    private static int channel(final int color, final int channel) {
+        return (color >>> (8 * (CHANNELS - 1 - channel))) & 0xFF;
+    }
+
+    private static int average(final List<ColorCount> box) {
+        final var sums = new long[CHANNELS];
+        long total = 0;
+        for (final var color : box) {
+            for (int channel = 0; channel < CHANNELS; channel++) {
+                sums[channel] += (long) channel(color.color(), channel) * color.count();
+            }
+            total += color.count();
+        }
+        var result = 0;
+        for (int channel = 0; channel < CHANNELS; channel++) {
+            result = (result << 8) | (int) Math.round((double) sums[channel] / total);
+        }
+        return normalize(result);
+    }
+
+    private static int findNearest(final int[] palette, final int color) {
+        var result = 0;
+        var bestDistance = Long.MAX_VALUE;
+        for (int index = 0; index < palette.length; index++) {
+            long distance = 0;
+            for (int channel = 0; channel < CHANNELS; channel++) {
+                final long delta = channel(palette[index], channel) - channel(color, channel);
+                distance += delta * delta;
+            }
+            if (distance < bestDistance) {
+                result = index;
+                bestDistance = distance;
+                if (distance == 0) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A color of the histogram.
+     *
+     * @param color The ARGB color.
+     * @param count The number of pixels of this color.
+     * @author Fabrice Bouyé (fabriceb@spc.int)
+     */
+    private record ColorCount(int color, int count) {
+    }
+
+    /**
+     * Result of a quantization.
+     *
+     * @param colors  The ARGB palette, translucent colors first.
+     * @param indices The palette index of each pixel.
+     * @author Fabrice Bouyé (fabriceb@spc.int)
+     */
+    record Palette(int[] colors, byte[] indices) {
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign.task;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+
+/**
+ * Writes each file in a folder.
+ * <br/>Links are hard links when the file system supports them, copies otherwise.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+final class FolderSink implements OutputSink {
+
+    private final File folder;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param folder The target folder.
+     */
+    FolderSink(final File folder) {
+        this.folder = folder;
+    }
+
+    @Override
+    public void write(final String name, final Content content) throws IOException {
+        final var path = new File(folder, name).toPath();
+        // A previous run may have linked this file to others, writing in place would change them too.
+        Files.deleteIfExists(path);
+        try (final var output = new BufferedOutputStream(Files.newOutputStream(path))) {
+            content.writeTo(output);
+        }
+    }
+
+    @Override
+    public void link(final String name, final String target) throws IOException {
+        final var path = new File(folder, name).toPath();
+        final var targetPath = new File(folder, target).toPath();
+        Files.deleteIfExists(path);
+        try {
+            Files.createLink(path, targetPath);
+        } catch (UnsupportedOperationException | FileSystemException ex) {
+            Files.copy(targetPath, path);
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign.task;
+
+import javafx.application.Platform;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.image.WritableImage;
+import javafx.scene.layout.Region;
+import org.spc.health.epidemydesign.Infection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Measures each stage of the generation separately: template loading, snapshot, PNG encoding and file write.
+ * <br/>Each stage is run a few times to warm up the JIT, then measured over several iterations, for catalogues of increasing size.
+ * <br/>Throughput and the number of bytes allocated by the thread running the stage are reported for each stage.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class GenerationBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASUREMENT_ITERATIONS = 5;
+    /**
+     * Number of template loads in one iteration of the template stage.
+     */
+    private static final int LOADS_PER_ITERATION = 20;
+    private final File fxmlFile;
+    private final File cssFile;
+    private final GenerationOptions options;
+    private final com.sun.management.ThreadMXBean threadBean;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param fxmlFile Source FXML file.
+     * @param cssFile  Source CSS file.
+     * @param options  Generation options, only the encoding options and the render density are used.
+     */
+    public GenerationBenchmark(final File fxmlFile, final File cssFile, final GenerationOptions options) {
+        this.fxmlFile = fxmlFile;
+        this.cssFile = cssFile;
+        this.options = Objects.requireNonNull(options);
+        threadBean = (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean && bean.isThreadAllocatedMemorySupported())
+                ? bean : null;
+    }
+
+    /**
+     * Runs the benchmark.
+     * <br/>This method must not be invoked on the JavaFX Application Thread.
+     *
+     * @param infections List of infections, repeated as needed to reach each catalogue size.
+     * @param sizes      Number of images in each measured catalogue.
+     * @param out        The output of the report.
+     * @throws Exception In case of error.
+     */
+    public void run(final List<Infection> infections, final List<Integer> sizes, final PrintStream out) throws Exception {
+        final var catalogue = new ArrayList<GenerationEntry>();
+        infections.forEach(infection -> infection
+                .forEachState(state -> catalogue.add(new GenerationEntry(infection, state))));
+        if (catalogue.isEmpty()) {
+            throw new IllegalArgumentException("The catalogue is empty.");
+        }
+        final var fxmlURL = fxmlFile.toURI().toURL();
+        final var stylesheet = cssFile.toURI().toURL().toExternalForm();
+        final var folder = Files.createTempDirectory("epidemy-benchmark").toFile(); // NOI18N.
+        out.printf("%-10s %8s %22s %14s%n", "Stage", "Images", "Throughput (op/s)", "Alloc (B/op)"); // NOI18N.
+        try {
+            // Template.
+            report(out, "template", 1, LOADS_PER_ITERATION, measure(false, () -> { // NOI18N.
+                for (int index = 0; index < LOADS_PER_ITERATION; index++) {
+                    loadTemplate(fxmlURL, stylesheet);
+                }
+            }));
+            final var renderer = new SnapshotRenderer(loadTemplate(fxmlURL, stylesheet), options.getRenderDensity());
+            final var encoder = new PngEncoder(options.getCompressionLevel(), options.getPngFilter(), options.isIndexedColorEnabled());
+            final var sink = new FolderSink(folder);
+            for (final var size : sizes) {
+                final var entries = new ArrayList<GenerationEntry>(size);
+                for (int index = 0; index < size; index++) {
+                    entries.add(catalogue.get(index % catalogue.size()));
+                }
+                report(out, "snapshot", size, size, measure(true, () -> { // NOI18N.
+                    for (final var entry : entries) {
+                        renderer.recycle(renderer.render(entry));
+                    }
+                }));
+                // Encoding and writes use images rendered beforehand.
+                final var images = runOnFXThread(() -> {
+                    final var result = new ArrayList<WritableImage>(size);
+                    for (final var entry : entries) {
+                        result.add(renderer.render(entry));
+                    }
+                    return result;
+                });
+                report(out, "encode", size, size, measure(false, () -> { // NOI18N.
+                    for (final var image : images) {
+                        encoder.encode(image.getPixelReader(), 0, 0, (int) image.getWidth(), (int) image.getHeight(), OutputStream.nullOutputStream());
+                    }
+                }));
+                final var encoded = new ArrayList<byte[]>(size);
+                for (final var image : images) {
+                    final var output = new ByteArrayOutputStream();
+                    encoder.encode(image.getPixelReader(), 0, 0, (int) image.getWidth(), (int) image.getHeight(), output);
+                    encoded.add(output.toByteArray());
+                }
+                report(out, "write", size, size, measure(false, () -> { // NOI18N.
+                    for (int index = 0; index < size; index++) {
+                        final var bytes = encoded.get(index);
+                        sink.write(String.format("%d.png", index), output -> output.write(bytes)); // NOI18N.
+                    }
+                }));
+            }
+        } finally {
+            final var files = folder.listFiles();
+            if (Objects.nonNull(files)) {
+                Arrays.stream(files).forEach(File::delete);
+            }
+            folder.delete();
+        }
+    }
+
+    private static Region loadTemplate(final URL fxmlURL, final String stylesheet) throws IOException {
+        final var fxmlLoader = new FXMLLoader(fxmlURL);
+        final var node = fxmlLoader.<Region>load();
+        node.getStylesheets().add(stylesheet);
+        return node;
+    }
+
+    /**
+     * Runs the warm up and measured iterations of a stage.
+     *
+     * @param onFXThread If {@code true}, iterations run and are measured on the JavaFX Application Thread.
+     * @param iteration  One iteration of the stage.
+     * @return The measures, one per measured iteration.
+     * @throws Exception In case of error.
+     */
+    private List<Measure> measure(final boolean onFXThread, final Iteration iteration) throws Exception {
+        final Callable<Measure> measured = () -> measureOnce(iteration);
+        final var result = new ArrayList<Measure>(MEASUREMENT_ITERATIONS);
+        for (int index = 0; index < WARMUP_ITERATIONS + MEASUREMENT_ITERATIONS; index++) {
+            final var measure = onFXThread ? runOnFXThread(measured) : measured.call();
+            if (index >= WARMUP_ITERATIONS) {
+                result.add(measure);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Runs and measures one iteration on the current thread.
+     *
+     * @param iteration The iteration.
+     * @return A {@code Measure} instance, never {@code null}.
+     * @throws Exception In case of error.
+     */
+    private Measure measureOnce(final Iteration iteration) throws Exception {
+        final var startBytes = allocatedBytes();
+        final var start = System.nanoTime();
+        iteration.run();
+        final var nanos = System.nanoTime() - start;
+        final var endBytes = allocatedBytes();
+        return new Measure(nanos, (startBytes < 0) ? -1 : endBytes - startBytes);
+    }
+
+    private void report(final PrintStream out, final String stage, final int size, final int operations, final List<Measure> measures) {
+        final var throughputs = measures.stream()
+                .mapToDouble(measure -> operations * 1e9 / Math.max(1, measure.nanos()))
+                .toArray();
+        final var mean = Arrays.stream(throughputs).average().orElse(0);
+        final var deviation = Math.sqrt(Arrays.stream(throughputs).map(value -> (value - mean) * (value - mean)).average().orElse(0));
+        final var allocated = measures.stream()
+                .mapToLong(Measure::allocatedBytes)
+                .min()
+                .orElse(-1);
+        final var allocation = (allocated < 0) ? "n/a" : String.valueOf(allocated / operations); // NOI18N.
+        out.printf("%-10s %8d %12.1f +/- %5.1f %14s%n", stage, size, mean, deviation, allocation); // NOI18N.
+    }
+
+    /**
+     * Gets the number of bytes allocated so far by the current thread.
+     *
+     * @return The number of bytes, {@code -1} if not supported.
+     */
+    private long allocatedBytes() {
+        return Objects.isNull(threadBean) ? -1 : threadBean.getCurrentThreadAllocatedBytes();
+    }
+
+    private static <T> T runOnFXThread(final Callable<T> action) throws Exception {
+        final var futureTask = new FutureTask<>(action);
+        Platform.runLater(futureTask);
+        try {
+            return futureTask.get();
+        } catch (ExecutionException ex) {
+            throw (ex.getCause() instanceof Exception exception) ? exception : ex;
+        }
+    }
+
+    /**
+     * Result of one measured iteration.
+     *
+     * @param nanos          Elapsed time in nanoseconds.
+     * @param allocatedBytes Bytes allocated by the thread running the stage, {@code -1} if not supported.
+     * @author Fabrice Bouyé (fabriceb@spc.int)
+     */
+    private record Measure(long nanos, long allocatedBytes) {
+    }
+
+    /**
+     * One iteration of a stage.
+     *
+     * @author Fabrice Bouyé (fabriceb@spc.int)
+     */
+    @FunctionalInterface
+    private interface Iteration {
+
+        void run() throws Exception;
+    }
+}
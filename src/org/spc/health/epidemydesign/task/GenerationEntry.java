@@ -0,0 +1,28 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign.task;
+
+import org.spc.health.epidemydesign.Infection;
+import org.spc.health.epidemydesign.State;
+
+/**
+ * A single infection/state pair to be rendered.
+ *
+ * @param infection The infection.
+ * @param state     The state.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+record GenerationEntry(Infection infection, State state) {
+
+    /**
+     * Gets the base name of the output, without extension.
+     *
+     * @return A {@code String}, never {@code null}.
+     */
+    String getBaseName() {
+        return String.format("%s_%s", infection.getFileName(), state.getName()); // NOI18N.
+    }
+}
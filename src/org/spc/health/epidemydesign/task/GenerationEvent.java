@@ -0,0 +1,67 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign.task;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event emitted at the end of a generation run.
+ * <br/>Stage durations are summed over all threads; worker stages can thus be longer than the run itself.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+@Name("org.spc.health.epidemydesign.Generation") // NOI18N.
+@Label("Generation") // NOI18N.
+@Category({"Epidemy Design", "Generation"}) // NOI18N.
+@Description("A generation run.") // NOI18N.
+final class GenerationEvent extends Event {
+
+    @Label("Rendered Images") // NOI18N.
+    int renderedImages;
+
+    @Label("Restored Images") // NOI18N.
+    @Description("Images restored from the render cache.") // NOI18N.
+    int restoredImages;
+
+    @Label("Linked Images") // NOI18N.
+    @Description("Images identical to another image, written as links.") // NOI18N.
+    int linkedImages;
+
+    @Label("Bytes Written") // NOI18N.
+    @DataAmount
+    long bytesWritten;
+
+    @Label("Template Load") // NOI18N.
+    @Timespan
+    long templateLoad;
+
+    @Label("FX Thread Wait") // NOI18N.
+    @Description("Time spent waiting for the JavaFX Application Thread.") // NOI18N.
+    @Timespan
+    long fxThreadWait;
+
+    @Label("Snapshot") // NOI18N.
+    @Timespan
+    long snapshot;
+
+    @Label("Scale") // NOI18N.
+    @Timespan
+    long scale;
+
+    @Label("Encode") // NOI18N.
+    @Timespan
+    long encode;
+
+    @Label("Write") // NOI18N.
+    @Timespan
+    long write;
+}
@@ -0,0 +1,107 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign.task;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects the timings of a generation run.
+ * <br/>Stage durations are summed over all threads; this class may be updated from any thread.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+final class GenerationMetrics {
+
+    /**
+     * Stages of the generation.
+     *
+     * @author Fabrice Bouyé (fabriceb@spc.int)
+     */
+    enum Stage {
+        TEMPLATE_LOAD, FX_THREAD_WAIT, SNAPSHOT, SCALE, ENCODE, WRITE
+    }
+
+    private final LongAdder[] durations = new LongAdder[Stage.values().length];
+    private final LongAdder renderedImages = new LongAdder();
+    private final LongAdder restoredImages = new LongAdder();
+    private final LongAdder linkedImages = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final GenerationEvent event = new GenerationEvent();
+    private final long start = System.nanoTime();
+
+    /**
+     * Creates a new instance, the run starts now.
+     */
+    GenerationMetrics() {
+        for (int index = 0; index < durations.length; index++) {
+            durations[index] = new LongAdder();
+        }
+        event.begin();
+    }
+
+    void addDuration(final Stage stage, final long nanos) {
+        durations[stage.ordinal()].add(nanos);
+    }
+
+    void addRenderedImages(final int count) {
+        renderedImages.add(count);
+    }
+
+    void addRestoredImage() {
+        restoredImages.increment();
+    }
+
+    void addLinkedImage() {
+        linkedImages.increment();
+    }
+
+    void addBytesWritten(final long bytes) {
+        bytesWritten.add(bytes);
+    }
+
+    long getDuration(final Stage stage) {
+        return durations[stage.ordinal()].sum();
+    }
+
+    /**
+     * Ends the run: commits the flight recorder event and logs a summary.
+     *
+     * @param logger The target logger.
+     */
+    void finish(final Logger logger) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.renderedImages = renderedImages.intValue();
+            event.restoredImages = restoredImages.intValue();
+            event.linkedImages = linkedImages.intValue();
+            event.bytesWritten = bytesWritten.sum();
+            event.templateLoad = getDuration(Stage.TEMPLATE_LOAD);
+            event.fxThreadWait = getDuration(Stage.FX_THREAD_WAIT);
+            event.snapshot = getDuration(Stage.SNAPSHOT);
+            event.scale = getDuration(Stage.SCALE);
+            event.encode = getDuration(Stage.ENCODE);
+            event.write = getDuration(Stage.WRITE);
+            event.commit();
+        }
+        if (logger.isLoggable(Level.INFO)) {
+            final var elapsed = System.nanoTime() - start;
+            final var images = renderedImages.sum() + restoredImages.sum();
+            final var imagesPerSecond = (elapsed == 0) ? 0 : images * 1e9 / elapsed;
+            logger.log(Level.INFO, String.format("Generated %d images (%d restored from cache, %d linked to identical images) in %d ms, %.1f images/s, %d bytes written.%n" // NOI18N.
+                            + "Stages (summed over threads): template load %d ms, FX thread wait %d ms, snapshot %d ms, scale %d ms, encode %d ms, write %d ms.", // NOI18N.
+                    images, restoredImages.sum(), linkedImages.sum(), toMillis(elapsed), imagesPerSecond, bytesWritten.sum(),
+                    toMillis(getDuration(Stage.TEMPLATE_LOAD)), toMillis(getDuration(Stage.FX_THREAD_WAIT)), toMillis(getDuration(Stage.SNAPSHOT)),
+                    toMillis(getDuration(Stage.SCALE)), toMillis(getDuration(Stage.ENCODE)), toMillis(getDuration(Stage.WRITE))));
+        }
+    }
+
+    private static long toMillis(final long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign.task;
+
+import java.io.File;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Options of a generation run.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public final class GenerationOptions {
+
+    /**
+     * If {@code true}, several images are laid out in a single scene and rendered with a single snapshot.
+     */
+    private boolean atlasEnabled = false;
+    /**
+     * If {@code true}, a sprite sheet and its index are generated in addition to individual images.
+     */
+    private boolean spriteSheetEnabled = false;
+    /**
+     * Base name of the sprite sheet files.
+     */
+    private String spriteSheetName = "sprites"; // NOI18N.
+    /**
+     * File in which the render cache is persisted, {@code null} if the cache is disabled.
+     * <br/>The cache is only used when files are written in a folder.
+     */
+    private File cacheFile;
+    /**
+     * PNG compression level, from {@code 0} (fastest) to {@code 9} (smallest files).
+     */
+    private int compressionLevel = 6;
+    /**
+     * PNG row filter.
+     * <br/>Icons are made of large flat areas which compress best when rows are not filtered.
+     */
+    private PngFilter pngFilter = PngFilter.NONE;
+    /**
+     * If {@code true}, images are reduced to a palette of 256 colors, alpha included, and written as indexed PNG.
+     * <br/>Each image, and the sprite sheet, gets its own palette.
+     */
+    private boolean indexedColorEnabled = false;
+    /**
+     * If {@code true}, images with identical pixels are encoded once, the other files are linked to the first one.
+     */
+    private boolean deduplicationEnabled = false;
+    /**
+     * Pixel densities of the output images, in increasing order.
+     * <br/>Images are rendered once at the highest density, lower densities are downsampled from it.
+     */
+    private List<Integer> densities = List.of(1);
+    /**
+     * How generated files are stored.
+     */
+    private OutputFormat outputFormat = OutputFormat.FOLDER;
+    /**
+     * Base name of the archive, when files are written in an archive.
+     */
+    private String archiveName = "icons"; // NOI18N.
+    /**
+     * Themes rendered from the same template, each in its own subfolder.
+     * <br/>If empty, the template stylesheet is rendered in the target folder.
+     */
+    private List<Theme> themes = List.of();
+
+    /**
+     * Creates a new instance with default values.
+     */
+    public GenerationOptions() {
+    }
+
+    public boolean isAtlasEnabled() {
+        return atlasEnabled;
+    }
+
+    public void setAtlasEnabled(final boolean value) {
+        atlasEnabled = value;
+    }
+
+    public boolean isSpriteSheetEnabled() {
+        return spriteSheetEnabled;
+    }
+
+    public void setSpriteSheetEnabled(final boolean value) {
+        spriteSheetEnabled = value;
+    }
+
+    public String getSpriteSheetName() {
+        return spriteSheetName;
+    }
+
+    public void setSpriteSheetName(final String value) {
+        spriteSheetName = value;
+    }
+
+    public File getCacheFile() {
+        return cacheFile;
+    }
+
+    public void setCacheFile(final File value) {
+        cacheFile = value;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(final int value) {
+        if (value < 0 || value > 9) {
+            throw new IllegalArgumentException("compression level must be between 0 and 9.");
+        }
+        compressionLevel = value;
+    }
+
+    public PngFilter getPngFilter() {
+        return pngFilter;
+    }
+
+    public void setPngFilter(final PngFilter value) {
+        pngFilter = Objects.requireNonNull(value);
+    }
+
+    public boolean isIndexedColorEnabled() {
+        return indexedColorEnabled;
+    }
+
+    public void setIndexedColorEnabled(final boolean value) {
+        indexedColorEnabled = value;
+    }
+
+    public OutputFormat getOutputFormat() {
+        return outputFormat;
+    }
+
+    public void setOutputFormat(final OutputFormat value) {
+        outputFormat = Objects.requireNonNull(value);
+    }
+
+    public String getArchiveName() {
+        return archiveName;
+    }
+
+    public void setArchiveName(final String value) {
+        archiveName = value;
+    }
+
+    public boolean isDeduplicationEnabled() {
+        return deduplicationEnabled;
+    }
+
+    public void setDeduplicationEnabled(final boolean value) {
+        deduplicationEnabled = value;
+    }
+
+    public List<Theme> getThemes() {
+        return themes;
+    }
+
+    public void setThemes(final List<Theme> value) {
+        themes = List.copyOf(value);
+    }
+
+    public List<Integer> getDensities() {
+        return densities;
+    }
+
+    public void setDensities(final List<Integer> value) {
+        final var result = value.stream()
+                .distinct()
+                .sorted()
+                .toList();
+        if (result.isEmpty() || result.get(0) < 1) {
+            throw new IllegalArgumentException("densities must be positive integers.");
+        }
+        densities = result;
+    }
+
+    /**
+     * Gets the density at which images are rendered.
+     *
+     * @return The highest density.
+     */
+    public int getRenderDensity() {
+        return densities.get(densities.size() - 1);
+    }
+}
@@ -7,40 +7,109 @@ package org.spc.health.epidemydesign.task;
 
 import javafx.application.Platform;
 import javafx.concurrent.Task;
-import javafx.css.PseudoClass;
-import javafx.embed.swing.SwingFXUtils;
 import javafx.fxml.FXMLLoader;
-import javafx.scene.Scene;
-import javafx.scene.control.Label;
+import javafx.geometry.Rectangle2D;
 import javafx.scene.image.Image;
+import javafx.scene.image.PixelReader;
+import javafx.scene.image.WritableImage;
 import javafx.scene.layout.Region;
-import javafx.scene.layout.StackPane;
-import javafx.scene.paint.Color;
 import org.spc.health.epidemydesign.Infection;
+import org.spc.health.epidemydesign.Stylesheets;
 
-import javax.imageio.ImageIO;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
 
 /**
  * Task that generates images.
+ * <br/>Snapshots are taken on the JavaFX Application Thread while PNG encoding and file writes
+ * are done in parallel on a pool of worker threads.
  *
  * @author Fabrice Bouyé (fabriceb@spc.int)
  */
 public class GenerationTask extends Task<Void> {
 
+    private static final Logger LOGGER = Logger.getLogger(GenerationTask.class.getName());
+
     private final File folder;
+    /**
+     * Target folder of the theme being rendered.
+     */
+    private File themeFolder;
     private final List<Infection> infections;
     private final File fxmlFile;
     private final File cssFile;
-    private final HashMap<org.spc.health.epidemydesign.State, PseudoClass> pseudoClassMap = new HashMap<>();
+    private final GenerationOptions options;
     private final String format = "png"; // NOI18N.
-    private Image fxImage;
-    private Exception exception;
+    /**
+     * Number of worker threads used to encode and write images.
+     */
+    private final int workerCount = Math.max(1, Runtime.getRuntime().availableProcessors());
+    /**
+     * Limits the number of snapshots waiting to be encoded.
+     * <br/>Prevents the JavaFX Application Thread from filling the memory with images when workers cannot keep up.
+     */
+    private Semaphore pendingImages;
+    private ExecutorService workers;
+    private final List<Future<?>> pendingWrites = new LinkedList<>();
+    /**
+     * Destination of the generated files.
+     */
+    private OutputSink sink;
+    /**
+     * The sprite sheet, {@code null} if no sprite sheet is generated.
+     */
+    private SpriteSheet spriteSheet;
+    /**
+     * The render cache, {@code null} if the cache is disabled.
+     */
+    private RenderCache renderCache;
+    /**
+     * Cache keys of the files being written.
+     */
+    private final Map<File, String> cacheKeys = new HashMap<>();
+    /**
+     * PNG encoders, one per worker thread so that their buffers can be reused.
+     */
+    private final ThreadLocal<PngEncoder> encoders = ThreadLocal.withInitial(this::createEncoder);
+    /**
+     * Image scalers, one per worker thread so that their buffers can be reused.
+     */
+    private final ThreadLocal<ImageScaler> scalers = ThreadLocal.withInitial(ImageScaler::new);
+    /**
+     * Pixel digests, one per worker thread.
+     */
+    private final ThreadLocal<PixelDigest> pixelDigests = ThreadLocal.withInitial(PixelDigest::new);
+    /**
+     * Distinct images written so far, key is the pixel digest, value completes with the entry that was written once its files exist.
+     */
+    private final Map<String, CompletableFuture<GenerationEntry>> distinctImages = new ConcurrentHashMap<>();
+    /**
+     * Timings of the current run.
+     */
+    private GenerationMetrics metrics;
+    private final AtomicInteger currentProgress = new AtomicInteger();
+    private int totalProgress;
+
     /**
      * Creates a new instance.
      *
@@ -50,99 +119,573 @@ public class GenerationTask extends Task<Void> {
      * @param cssFile    Source CSS file.
      */
     public GenerationTask(final File folder, final List<Infection> infections, final File fxmlFile, final File cssFile) {
+        this(folder, infections, fxmlFile, cssFile, new GenerationOptions());
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param folder     Target folder.
+     * @param infections List of infections.
+     * @param fxmlFile   Source FXML file.
+     * @param cssFile    Source CSS file.
+     * @param options    Generation options.
+     */
+    public GenerationTask(final File folder, final List<Infection> infections, final File fxmlFile, final File cssFile, final GenerationOptions options) {
         super();
         this.folder = folder;
         this.infections = infections;
         this.fxmlFile = fxmlFile;
         this.cssFile = cssFile;
+        this.options = Objects.requireNonNull(options);
     }
 
     @Override
-    protected synchronized Void call() throws Exception {
-        int exportNumber = infections.stream().map((infection) -> infection.getStates().size()).reduce(0, Integer::sum);
-        int totalProgress = 3 + 3 * exportNumber;
-        int currentProgress = 0;
-        // Load the node.
-        final var cssURL = cssFile.toURI().toURL();
-        final var tempCSSFile = File.createTempFile(cssFile.getName(), null);
-        try (final var tempCSSOutput = new FileOutputStream(tempCSSFile)) {
-            Files.copy(cssFile.toPath(), tempCSSOutput);
-        }
-        final var tempCSSURL = tempCSSFile.toURI().toURL();
+    protected Void call() throws Exception {
+        final var entries = new ArrayList<GenerationEntry>();
+        infections.forEach(infection -> infection
+                .forEachState(state -> entries.add(new GenerationEntry(infection, state))));
+        final var themes = options.getThemes();
+        final var themeCount = Math.max(1, themes.size());
+        totalProgress = 2 + themeCount * (3 * entries.size() + (options.isSpriteSheetEnabled() ? 1 : 0));
+        currentProgress.set(0);
+        metrics = new GenerationMetrics();
         final var fxmlURL = fxmlFile.toURI().toURL();
-        final var fxmlLoader = new FXMLLoader(fxmlURL);
-        final var node = fxmlLoader.<Region>load();
-//            node.getStylesheets().add(cssURL.toExternalForm());
-        node.getStylesheets().add(tempCSSURL.toExternalForm());
-        updateProgress(++currentProgress, totalProgress);
-        if (isCancelled()) {
-            return null;
+        // Cached images are restored as files.
+        if (Objects.nonNull(options.getCacheFile()) && options.getOutputFormat() == OutputFormat.FOLDER) {
+            renderCache = new RenderCache(options.getCacheFile());
+            renderCache.load();
         }
-        //
-        for (final var infection : infections) {
-            for (final var state : infection.getStates()) {
+        final var inFlightLimit = options.isAtlasEnabled() ? 2 * AtlasRenderer.BATCH_SIZE : 2 * workerCount;
+        pendingImages = new Semaphore(inFlightLimit);
+        workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            final var thread = new Thread(runnable, "generation-worker"); // NOI18N.
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            // Load the node, the template is parsed once and shared by all themes.
+            final var loadStart = System.nanoTime();
+            final AtlasRenderer atlasRenderer;
+            final SnapshotRenderer snapshotRenderer;
+            if (options.isAtlasEnabled()) {
+                atlasRenderer = new AtlasRenderer(fxmlURL, options.getRenderDensity());
+                atlasRenderer.prepareTiles(Math.min(entries.size(), AtlasRenderer.BATCH_SIZE));
+                snapshotRenderer = null;
+            } else {
+                final var fxmlLoader = new FXMLLoader(fxmlURL);
+                snapshotRenderer = new SnapshotRenderer(fxmlLoader.<Region>load(), options.getRenderDensity());
+                atlasRenderer = null;
+            }
+            metrics.addDuration(GenerationMetrics.Stage.TEMPLATE_LOAD, System.nanoTime() - loadStart);
+            incrementProgress();
+            //
+            final var themeList = themes.isEmpty() ? List.of(new Theme("", cssFile)) : themes; // NOI18N.
+            for (final var theme : themeList) {
                 if (isCancelled()) {
                     return null;
                 }
-                // Export to image.
-                // Apparently, we can only manipulate pseudo classes on the JavaFX Application Thread.
-                Platform.runLater(() -> prepareControl(node, infection, state));
-                wait();
-                updateProgress(++currentProgress, totalProgress);
-                if (exception != null) {
-                    throw exception;
+                themeFolder = theme.name().isEmpty() ? folder : new File(folder, theme.name());
+                if (!themeFolder.exists() && !themeFolder.mkdirs()) {
+                    throw new IOException(String.format("Cannot create folder %s.", themeFolder)); // NOI18N.
                 }
-                if (isCancelled()) {
+                final var stylesheet = Stylesheets.toDataURI(Files.readString(theme.cssFile().toPath()));
+                spriteSheet = options.isSpriteSheetEnabled() ? new SpriteSheet(options.getSpriteSheetName(), createEncoder()) : null;
+                if (Objects.nonNull(renderCache)) {
+                    renderCache.setTemplate(fxmlFile, theme.cssFile());
+                }
+                final var toRender = restoreFromCache(entries);
+                sink = OutputSink.create(options.getOutputFormat(), themeFolder, options.getArchiveName());
+                final boolean completed;
+                if (toRender.isEmpty()) {
+                    completed = true;
+                } else if (options.isAtlasEnabled()) {
+                    atlasRenderer.setStylesheet(stylesheet);
+                    completed = renderAtlases(toRender, atlasRenderer);
+                } else {
+                    snapshotRenderer.setStylesheet(stylesheet);
+                    completed = renderImages(toRender, snapshotRenderer);
+                }
+                if (!completed) {
                     return null;
                 }
-                // Convert to Swing image.
-                final var swingImage = SwingFXUtils.fromFXImage(fxImage, null);
-                fxImage = null;
-                updateProgress(++currentProgress, totalProgress);
-                // Export to file.
-                final var infectionName = infection.getFileName();
-                final var stateName = state.getName();
-                final var outputPath = String.format("%s_%s.%s", infectionName, stateName, format); // NOI18N.
-                final var outputFile = new File(folder, outputPath);
-                ImageIO.write(swingImage, format, outputFile);
-                updateProgress(++currentProgress, totalProgress);
-            }
-        }
-        pseudoClassMap.clear();
-        updateProgress(++currentProgress, totalProgress);
+                // Wait for remaining images to be written.
+                for (final var pendingWrite : pendingWrites) {
+                    waitForWrite(pendingWrite);
+                }
+                pendingWrites.clear();
+                if (Objects.nonNull(spriteSheet)) {
+                    spriteSheet.write(sink);
+                    incrementProgress();
+                }
+                sink.close();
+                sink = null;
+                spriteSheet = null;
+                cacheKeys.clear();
+                // Files cannot be linked across themes.
+                distinctImages.clear();
+            }
+            metrics.finish(LOGGER);
+        } finally {
+            workers.shutdownNow();
+            // Workers may still be writing after a cancellation or an error.
+            awaitWorkers();
+            try {
+                if (Objects.nonNull(sink)) {
+                    sink.close();
+                    sink = null;
+                }
+            } finally {
+                pendingWrites.clear();
+                spriteSheet = null;
+                try {
+                    if (Objects.nonNull(renderCache)) {
+                        renderCache.save();
+                    }
+                } finally {
+                    renderCache = null;
+                    cacheKeys.clear();
+                    distinctImages.clear();
+                }
+            }
+        }
+        incrementProgress();
         return null;
     }
 
-    private synchronized void prepareControl(final Region node, final Infection infection, final org.spc.health.epidemydesign.State state) {
+    /**
+     * Waits for the workers to stop, even if the current thread is interrupted.
+     * <br/>Cancelling the task interrupts its thread; the sink must not be closed while workers are still writing to it.
+     * <br/>The interrupted status of the current thread is restored afterwards.
+     */
+    private void awaitWorkers() {
+        var interrupted = Thread.interrupted();
+        final var deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+        while (!workers.isTerminated()) {
+            final var remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                LOGGER.warning("Workers did not stop in time."); // NOI18N.
+                break;
+            }
+            try {
+                workers.awaitTermination(remaining, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Restores images whose inputs did not change since they were last rendered.
+     *
+     * @param entries The entries.
+     * @return The list of entries that still need to be rendered, never {@code null}.
+     * @throws Exception In case of error.
+     */
+    private List<GenerationEntry> restoreFromCache(final List<GenerationEntry> entries) throws Exception {
+        if (Objects.isNull(renderCache)) {
+            return entries;
+        }
+        final var result = new ArrayList<GenerationEntry>(entries.size());
+        final var densities = options.getDensities();
+        for (final var entry : entries) {
+            final var keys = new HashMap<File, String>();
+            var restored = true;
+            for (final var density : densities) {
+                final var outputFile = getOutputFile(entry, density);
+                final var key = renderCache.computeKey(entry, getVariant(density));
+                keys.put(outputFile, key);
+                // All densities are rendered again if one of them is missing.
+                restored &= renderCache.restore(key, outputFile);
+            }
+            if (restored) {
+                if (Objects.nonNull(spriteSheet)) {
+                    final var outputFile = getOutputFile(entry, densities.get(0));
+                    final var image = new Image(outputFile.toURI().toString());
+                    spriteSheet.add(entry.getBaseName(), image.getPixelReader(), 0, 0, (int) image.getWidth(), (int) image.getHeight());
+                }
+                // Snapshot, conversion and write are skipped.
+                metrics.addRestoredImage();
+                incrementProgress();
+                incrementProgress();
+                incrementProgress();
+            } else {
+                cacheKeys.putAll(keys);
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Renders images one at a time.
+     *
+     * @param entries  The entries to render.
+     * @param renderer The renderer.
+     * @return {@code False} if the task was cancelled, {@code true} otherwise.
+     * @throws Exception In case of error.
+     */
+    private boolean renderImages(final List<GenerationEntry> entries, final SnapshotRenderer renderer) throws Exception {
+        for (final var entry : entries) {
+            if (isCancelled()) {
+                return false;
+            }
+            checkPendingWrites();
+            // Wait until a worker is available to receive the image.
+            pendingImages.acquire();
+            // Export to image.
+            // Apparently, we can only manipulate pseudo classes on the JavaFX Application Thread.
+            final WritableImage fxImage;
+            try {
+                fxImage = snapshotOnFXThread(1, () -> renderer.render(entry));
+            } catch (Exception ex) {
+                pendingImages.release();
+                throw ex;
+            }
+            incrementProgress();
+            if (isCancelled()) {
+                pendingImages.release();
+                return false;
+            }
+            // The image is rendered into again once written.
+            submitImage(fxImage, null, entry, () -> renderer.recycle(fxImage));
+        }
+        return true;
+    }
+
+    /**
+     * Renders images by batches, each batch being captured in a single snapshot.
+     *
+     * @param entries  The entries to render.
+     * @param renderer The renderer, with enough tiles prepared for a batch.
+     * @return {@code False} if the task was cancelled, {@code true} otherwise.
+     * @throws Exception In case of error.
+     */
+    private boolean renderAtlases(final List<GenerationEntry> entries, final AtlasRenderer renderer) throws Exception {
+        for (int start = 0; start < entries.size(); start += AtlasRenderer.BATCH_SIZE) {
+            if (isCancelled()) {
+                return false;
+            }
+            checkPendingWrites();
+            final var batch = entries.subList(start, Math.min(entries.size(), start + AtlasRenderer.BATCH_SIZE));
+            // Wait until workers are available to receive the whole batch.
+            pendingImages.acquire(batch.size());
+            final AtlasRenderer.Atlas atlas;
+            try {
+                atlas = snapshotOnFXThread(batch.size(), () -> renderer.render(batch));
+            } catch (Exception ex) {
+                pendingImages.release(batch.size());
+                throw ex;
+            }
+            if (isCancelled()) {
+                pendingImages.release(batch.size());
+                return false;
+            }
+            for (int index = 0; index < batch.size(); index++) {
+                incrementProgress();
+                submitImage(atlas.image(), atlas.bounds().get(index), batch.get(index), null);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Runs a snapshot on the JavaFX Application Thread and waits for its result.
+     * <br/>Time spent waiting for the JavaFX Application Thread and time spent in the snapshot are recorded separately.
+     *
+     * @param <T>        The type of the result.
+     * @param imageCount The number of images in the snapshot.
+     * @param action     The action.
+     * @return The result of the action.
+     * @throws Exception In case of error.
+     */
+    private <T> T snapshotOnFXThread(final int imageCount, final Callable<T> action) throws Exception {
+        final var event = new SnapshotEvent();
+        final var submitted = System.nanoTime();
+        final var futureTask = new FutureTask<>(() -> {
+            final var start = System.nanoTime();
+            event.begin();
+            try {
+                return action.call();
+            } finally {
+                event.end();
+                final var end = System.nanoTime();
+                metrics.addDuration(GenerationMetrics.Stage.FX_THREAD_WAIT, start - submitted);
+                metrics.addDuration(GenerationMetrics.Stage.SNAPSHOT, end - start);
+                metrics.addRenderedImages(imageCount);
+                if (event.shouldCommit()) {
+                    event.images = imageCount;
+                    event.fxThreadWait = start - submitted;
+                    event.commit();
+                }
+            }
+        });
+        Platform.runLater(futureTask);
         try {
-            if (!isCancelled()) {
-                // Change the label.
-                final var label = (Label) node.lookup(".label"); // NOI18N.
-                if (Objects.nonNull(label)) {
-                    label.setText(infection.getName());
+            return futureTask.get();
+        } catch (ExecutionException ex) {
+            throw unwrap(ex);
+        }
+    }
+
+    /**
+     * Sends an image to the workers to be written to a file.
+     * <br/>One pending image permit must have been acquired before calling this method.
+     *
+     * @param fxImage  The source image.
+     * @param viewport Area of the source image to write, or {@code null} to write the whole image.
+     * @param entry    The entry.
+     * @param onDone   Action invoked once the source image is no longer needed, may be {@code null}.
+     */
+    private void submitImage(final Image fxImage, final Rectangle2D viewport, final GenerationEntry entry, final Runnable onDone) {
+        pendingWrites.add(workers.submit(() -> {
+            try {
+                writeImage(fxImage, viewport, entry);
+            } finally {
+                if (Objects.nonNull(onDone)) {
+                    onDone.run();
                 }
-                // Sets the pseudo class.
-                var pseudoClass = pseudoClassMap.get(state);
-                if (Objects.isNull(pseudoClass)) {
-                    pseudoClass = PseudoClass.getPseudoClass(state.getName());
-                    pseudoClassMap.put(state, pseudoClass);
+                pendingImages.release();
+            }
+            return null;
+        }));
+    }
+
+    /**
+     * Gets the name of the file in which the image of an entry is written.
+     *
+     * @param entry   The entry.
+     * @param density The pixel density of the image.
+     * @return A {@code String} instance, never {@code null}.
+     */
+    private String getOutputName(final GenerationEntry entry, final int density) {
+        return (density == 1)
+                ? String.format("%s.%s", entry.getBaseName(), format) // NOI18N.
+                : String.format("%s@%dx.%s", entry.getBaseName(), density, format); // NOI18N.
+    }
+
+    /**
+     * Gets the file in which the image of an entry is written, when files are written in a folder.
+     *
+     * @param entry   The entry.
+     * @param density The pixel density of the image.
+     * @return A {@code File} instance, never {@code null}.
+     */
+    private File getOutputFile(final GenerationEntry entry, final int density) {
+        return new File(themeFolder, getOutputName(entry, density));
+    }
+
+    /**
+     * Gets the cache variant of an image.
+     * <br/>The variant holds every option that changes the bytes written, so that changing one of them does not reuse older images.
+     *
+     * @param density The pixel density of the image.
+     * @return A {@code String} instance, never {@code null}.
+     */
+    private String getVariant(final int density) {
+        final var renderDensity = options.getRenderDensity();
+        // Downsampled images differ from images rendered at their own density.
+        final var variant = (renderDensity == 1) ? format : String.format("%s@%dx/%dx", format, density, renderDensity); // NOI18N.
+        return String.format("%s/z%d/%s/%s", variant, options.getCompressionLevel(), options.getPngFilter(), options.isIndexedColorEnabled() ? "indexed" : "rgba"); // NOI18N.
+    }
+
+    /**
+     * Encode and write an image to files, one per density.
+     * <br/>This method is invoked on a worker thread.
+     *
+     * @param fxImage  The source image, rendered at the highest density.
+     * @param viewport Area of the source image to write, or {@code null} to write the whole image.
+     * @param entry    The entry.
+     * @throws Exception In case of error.
+     */
+    private void writeImage(final Image fxImage, final Rectangle2D viewport, final GenerationEntry entry) throws Exception {
+        if (isCancelled()) {
+            return;
+        }
+        final var x = Objects.isNull(viewport) ? 0 : (int) viewport.getMinX();
+        final var y = Objects.isNull(viewport) ? 0 : (int) viewport.getMinY();
+        final var width = (int) (Objects.isNull(viewport) ? fxImage.getWidth() : viewport.getWidth());
+        final var height = (int) (Objects.isNull(viewport) ? fxImage.getHeight() : viewport.getHeight());
+        final var pixelReader = fxImage.getPixelReader();
+        final var densities = options.getDensities();
+        if (options.isDeduplicationEnabled()) {
+            final var key = pixelDigests.get().compute(pixelReader, x, y, width, height);
+            final var claim = new CompletableFuture<GenerationEntry>();
+            final var original = distinctImages.putIfAbsent(key, claim);
+            if (Objects.nonNull(original)) {
+                // Wait for the identical image to be written.
+                linkImage(entry, original.get());
+            } else {
+                try {
+                    encodeImage(pixelReader, x, y, width, height, entry);
+                    claim.complete(entry);
+                } catch (Throwable ex) {
+                    claim.completeExceptionally(ex);
+                    throw ex;
                 }
-                node.pseudoClassStateChanged(pseudoClass, true);
-                final var parent = new StackPane();
-                parent.setStyle("-fx-background-color: transparent;"); // NOI18N.
-                parent.getChildren().add(node);
-                final var scene = new Scene(parent);
-                scene.setFill(Color.TRANSPARENT);
-                fxImage = scene.snapshot(null);
-                // Clear scene content.
-                parent.getChildren().remove(node);
-                // Unsets the pseudo class.
-                node.pseudoClassStateChanged(pseudoClass, false);
-            }
-        } catch (Exception ex) {
-            exception = ex;
-        } finally {
-            notify();
+            }
+        } else {
+            encodeImage(pixelReader, x, y, width, height, entry);
+        }
+        incrementProgress();
+        if (Objects.nonNull(renderCache)) {
+            for (final var density : densities) {
+                final var outputFile = getOutputFile(entry, density);
+                renderCache.store(cacheKeys.get(outputFile), outputFile);
+            }
+        }
+        incrementProgress();
+    }
+
+    /**
+     * Encodes and writes the files of an entry, one per density.
+     * <br/>This method is invoked on a worker thread.
+     *
+     * @param pixelReader The source pixel reader, rendered at the highest density.
+     * @param x           The X coordinate of the image in the source.
+     * @param y           The Y coordinate of the image in the source.
+     * @param width       The width of the image in the source.
+     * @param height      The height of the image in the source.
+     * @param entry       The entry.
+     * @throws IOException In case of IO error.
+     */
+    private void encodeImage(final PixelReader pixelReader, final int x, final int y, final int width, final int height, final GenerationEntry entry) throws IOException {
+        final var densities = options.getDensities();
+        final var renderDensity = options.getRenderDensity();
+        final var encoder = encoders.get();
+        final var scaler = scalers.get();
+        if (densities.size() > 1) {
+            final var scaleStart = System.nanoTime();
+            scaler.load(pixelReader, x, y, width, height);
+            metrics.addDuration(GenerationMetrics.Stage.SCALE, System.nanoTime() - scaleStart);
+        }
+        for (final var density : densities) {
+            final var isSprite = Objects.nonNull(spriteSheet) && density.equals(densities.get(0));
+            final var name = getOutputName(entry, density);
+            if (density == renderDensity) {
+                if (isSprite) {
+                    spriteSheet.add(entry.getBaseName(), pixelReader, x, y, width, height);
+                }
+                // Pixels are read and encoded in a single pass.
+                writeFile(name, output -> encoder.encode(pixelReader, x, y, width, height, output));
+            } else {
+                final var targetWidth = Math.max(1, width * density / renderDensity);
+                final var targetHeight = Math.max(1, height * density / renderDensity);
+                final var scaleStart = System.nanoTime();
+                final var pixels = scaler.scale(targetWidth, targetHeight);
+                metrics.addDuration(GenerationMetrics.Stage.SCALE, System.nanoTime() - scaleStart);
+                if (isSprite) {
+                    spriteSheet.add(entry.getBaseName(), pixels, targetWidth, targetHeight);
+                }
+                writeFile(name, output -> encoder.encode(pixels, targetWidth, targetHeight, output));
+            }
+        }
+    }
+
+    /**
+     * Makes the files of an entry share the content of the files of an identical entry.
+     * <br/>This method is invoked on a worker thread.
+     *
+     * @param entry    The entry.
+     * @param original The identical entry, whose files were already written.
+     * @throws IOException In case of IO error.
+     */
+    private void linkImage(final GenerationEntry entry, final GenerationEntry original) throws IOException {
+        for (final var density : options.getDensities()) {
+            sink.link(getOutputName(entry, density), getOutputName(original, density));
+        }
+        if (Objects.nonNull(spriteSheet)) {
+            spriteSheet.addAlias(entry.getBaseName(), original.getBaseName());
         }
+        metrics.addLinkedImage();
+    }
+
+    /**
+     * Encodes and writes a file to the sink.
+     * <br/>This method is invoked on a worker thread.
+     *
+     * @param name    The name of the file.
+     * @param encoder Encodes the image and returns the number of bytes written.
+     * @throws IOException In case of IO error.
+     */
+    private void writeFile(final String name, final Encoding encoder) throws IOException {
+        final var event = new ImageWriteEvent();
+        event.begin();
+        final var start = System.nanoTime();
+        final var encodeTime = new long[1];
+        final var bytes = new long[1];
+        sink.write(name, output -> {
+            final var encodeStart = System.nanoTime();
+            bytes[0] = encoder.encode(output);
+            encodeTime[0] = System.nanoTime() - encodeStart;
+        });
+        final var elapsed = System.nanoTime() - start;
+        event.end();
+        metrics.addDuration(GenerationMetrics.Stage.ENCODE, encodeTime[0]);
+        metrics.addDuration(GenerationMetrics.Stage.WRITE, elapsed - encodeTime[0]);
+        metrics.addBytesWritten(bytes[0]);
+        if (event.shouldCommit()) {
+            event.name = name;
+            event.bytes = bytes[0];
+            event.encode = encodeTime[0];
+            event.commit();
+        }
+    }
+
+    private PngEncoder createEncoder() {
+        return new PngEncoder(options.getCompressionLevel(), options.getPngFilter(), options.isIndexedColorEnabled());
+    }
+
+    /**
+     * Remove completed writes from the pending list and rethrow the first error if any.
+     *
+     * @throws Exception In case a write failed.
+     */
+    private void checkPendingWrites() throws Exception {
+        for (final var iterator = pendingWrites.iterator(); iterator.hasNext(); ) {
+            final var pendingWrite = iterator.next();
+            if (pendingWrite.isDone()) {
+                waitForWrite(pendingWrite);
+                iterator.remove();
+            }
+        }
+    }
+
+    private void waitForWrite(final Future<?> pendingWrite) throws Exception {
+        try {
+            pendingWrite.get();
+        } catch (ExecutionException ex) {
+            throw unwrap(ex);
+        }
+    }
+
+    private Exception unwrap(final ExecutionException ex) {
+        final var cause = ex.getCause();
+        return (cause instanceof Exception exception) ? exception : ex;
+    }
+
+    private void incrementProgress() {
+        updateProgress(currentProgress.incrementAndGet(), totalProgress);
+    }
+
+    /**
+     * Encodes an image to an output.
+     *
+     * @author Fabrice Bouyé (fabriceb@spc.int)
+     */
+    @FunctionalInterface
+    private interface Encoding {
+
+        /**
+         * Encodes the image.
+         *
+         * @param output The target output.
+         * @return The number of bytes written.
+         * @throws IOException In case of IO error.
+         */
+        long encode(OutputStream output) throws IOException;
     }
 }
@@ -0,0 +1,151 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign.task;
+
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+
+/**
+ * Downsamples images with an area-averaging filter.
+ * <br/>Each target pixel is the average of the source pixels it covers, weighted by the covered area, which gives
+ * clean results for non-integer ratios (ie: from 3x to 2x).
+ * <br/>Averaging is done on premultiplied values so that transparent pixels do not darken the edges.
+ * <br/>Buffers are reused from one image to the next, which makes instances of this class unsafe to share between threads.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+final class ImageScaler {
+
+    private int[] source = new int[0];
+    private int sourceWidth;
+    private int sourceHeight;
+    /**
+     * Premultiplied components of the horizontally scaled rows.
+     */
+    private float[] rows = new float[0];
+    private int[] target = new int[0];
+
+    /**
+     * Loads the source image.
+     *
+     * @param reader The source pixel reader.
+     * @param x      The X coordinate of the area.
+     * @param y      The Y coordinate of the area.
+     * @param width  The width of the area.
+     * @param height The height of the area.
+     */
+    void load(final PixelReader reader, final int x, final int y, final int width, final int height) {
+        final var size = width * height;
+        if (source.length < size) {
+            source = new int[size];
+        }
+        reader.getPixels(x, y, width, height, PixelFormat.getIntArgbPreInstance(), source, 0, width);
+        sourceWidth = width;
+        sourceHeight = height;
+    }
+
+    /**
+     * Downsamples the source image.
+     *
+     * @param width  The target width, not greater than the source width.
+     * @param height The target height, not greater than the source height.
+     * @return The non-premultiplied ARGB pixels of the target image, row after row; the array is reused by the next call.
+     */
+    int[] scale(final int width, final int height) {
+        final var rowsSize = 4 * width * sourceHeight;
+        if (rows.length < rowsSize) {
+            rows = new float[rowsSize];
+        }
+        if (target.length < width * height) {
+            target = new int[width * height];
+        }
+        // Horizontal pass.
+        final var columnWeights = computeWeights(sourceWidth, width);
+        for (int row = 0; row < sourceHeight; row++) {
+            final var sourceOffset = row * sourceWidth;
+            final var rowOffset = 4 * row * width;
+            for (int column = 0; column < width; column++) {
+                float a = 0, r = 0, g = 0, b = 0;
+                final var weights = columnWeights[column];
+                final var first = (int) weights[0];
+                for (int index = 1; index < weights.length; index++) {
+                    final var pixel = source[sourceOffset + first + index - 1];
+                    final var weight = weights[index];
+                    a += weight * (pixel >>> 24);
+                    r += weight * ((pixel >> 16) & 0xFF);
+                    g += weight * ((pixel >> 8) & 0xFF);
+                    b += weight * (pixel & 0xFF);
+                }
+                final var offset = rowOffset + 4 * column;
+                rows[offset] = a;
+                rows[offset + 1] = r;
+                rows[offset + 2] = g;
+                rows[offset + 3] = b;
+            }
+        }
+        // Vertical pass.
+        final var rowWeights = computeWeights(sourceHeight, height);
+        for (int row = 0; row < height; row++) {
+            final var weights = rowWeights[row];
+            final var first = (int) weights[0];
+            for (int column = 0; column < width; column++) {
+                float a = 0, r = 0, g = 0, b = 0;
+                for (int index = 1; index < weights.length; index++) {
+                    final var offset = 4 * ((first + index - 1) * width + column);
+                    final var weight = weights[index];
+                    a += weight * rows[offset];
+                    r += weight * rows[offset + 1];
+                    g += weight * rows[offset + 2];
+                    b += weight * rows[offset + 3];
+                }
+                target[row * width + column] = unpremultiply(a, r, g, b);
+            }
+        }
+        return target;
+    }
+
+    /**
+     * Computes the coverage of source pixels for each target pixel along one axis.
+     *
+     * @param sourceLength The source length.
+     * @param targetLength The target length.
+     * @return For each target pixel, the index of the first covered source pixel followed by the weight of each covered source pixel.
+     */
+    private static float[][] computeWeights(final int sourceLength, final int targetLength) {
+        final var ratio = (double) sourceLength / targetLength;
+        final var result = new float[targetLength][];
+        for (int index = 0; index < targetLength; index++) {
+            final var start = index * ratio;
+            final var end = Math.min(sourceLength, (index + 1) * ratio);
+            final var first = (int) Math.floor(start);
+            final var last = Math.min(sourceLength, (int) Math.ceil(end));
+            final var weights = new float[1 + last - first];
+            weights[0] = first;
+            for (int source = first; source < last; source++) {
+                final var coverage = Math.min(end, source + 1) - Math.max(start, source);
+                weights[1 + source - first] = (float) (coverage / ratio);
+            }
+            result[index] = weights;
+        }
+        return result;
+    }
+
+    private static int unpremultiply(final float a, final float r, final float g, final float b) {
+        final var alpha = Math.round(a);
+        if (alpha <= 0) {
+            return 0;
+        }
+        final var factor = 255f / a;
+        return (Math.min(255, alpha) << 24)
+                | (clamp(r * factor) << 16)
+                | (clamp(g * factor) << 8)
+                | clamp(b * factor);
+    }
+
+    private static int clamp(final float value) {
+        return Math.max(0, Math.min(255, Math.round(value)));
+    }
+}
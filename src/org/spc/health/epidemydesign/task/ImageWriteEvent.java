@@ -0,0 +1,37 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign.task;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event emitted for each image file written by a worker.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+@Name("org.spc.health.epidemydesign.ImageWrite") // NOI18N.
+@Label("Image Write") // NOI18N.
+@Category({"Epidemy Design", "Generation"}) // NOI18N.
+@Description("Encoding and write of an image file.") // NOI18N.
+final class ImageWriteEvent extends Event {
+
+    @Label("Name") // NOI18N.
+    String name;
+
+    @Label("Bytes") // NOI18N.
+    @DataAmount
+    long bytes;
+
+    @Label("Encode") // NOI18N.
+    @Timespan
+    long encode;
+}
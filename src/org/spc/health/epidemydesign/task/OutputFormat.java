@@ -0,0 +1,28 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign.task;
+
+/**
+ * Ways to store the generated files.
+ * <br/>Archives are written in a single sequential pass, without temporary files, which is much faster than creating
+ * thousands of small files on network shares.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public enum OutputFormat {
+    /**
+     * One file per image in the target folder.
+     */
+    FOLDER,
+    /**
+     * A single ZIP archive in the target folder.
+     */
+    ZIP,
+    /**
+     * A single TAR archive in the target folder.
+     */
+    TAR
+}
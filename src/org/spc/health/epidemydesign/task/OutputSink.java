@@ -0,0 +1,72 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign.task;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Destination of the generated files.
+ * <br/>Implementations may be invoked from several worker threads at once.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+interface OutputSink extends Closeable {
+
+    /**
+     * Writes a file.
+     *
+     * @param name    The name of the file.
+     * @param content Writes the content of the file.
+     * @throws IOException In case of IO error.
+     */
+    void write(String name, Content content) throws IOException;
+
+    /**
+     * Makes a file share the content of a file that was already written.
+     *
+     * @param name   The name of the file.
+     * @param target The name of the file that was already written.
+     * @throws IOException In case of IO error.
+     */
+    void link(String name, String target) throws IOException;
+
+    /**
+     * Creates a sink.
+     *
+     * @param format      The output format.
+     * @param folder      The target folder.
+     * @param archiveName Base name of the archive, if any.
+     * @return An {@code OutputSink} instance, never {@code null}.
+     * @throws IOException In case of IO error.
+     */
+    static OutputSink create(final OutputFormat format, final File folder, final String archiveName) throws IOException {
+        return switch (format) {
+            case FOLDER -> new FolderSink(folder);
+            case ZIP -> new ZipSink(new File(folder, String.format("%s.zip", archiveName))); // NOI18N.
+            case TAR -> new TarSink(new File(folder, String.format("%s.tar", archiveName))); // NOI18N.
+        };
+    }
+
+    /**
+     * Content of a file.
+     *
+     * @author Fabrice Bouyé (fabriceb@spc.int)
+     */
+    @FunctionalInterface
+    interface Content {
+
+        /**
+         * Writes the content.
+         *
+         * @param output The target output, must not be closed by this method.
+         * @throws IOException In case of IO error.
+         */
+        void writeTo(OutputStream output) throws IOException;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign.task;
+
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Computes a digest of the raw pixels of an image, images with the same digest are identical.
+ * <br/>Buffers are reused from one image to the next, which makes instances of this class unsafe to share between threads.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+final class PixelDigest {
+
+    private final MessageDigest digest;
+    private byte[] pixels = new byte[0];
+    private final byte[] size = new byte[8];
+
+    /**
+     * Creates a new instance.
+     */
+    PixelDigest() {
+        try {
+            digest = MessageDigest.getInstance("SHA-256"); // NOI18N.
+        } catch (NoSuchAlgorithmException ex) {
+            // Every JDK provides SHA-256.
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Computes the digest of an area of an image.
+     *
+     * @param reader The source pixel reader.
+     * @param x      The X coordinate of the area.
+     * @param y      The Y coordinate of the area.
+     * @param width  The width of the area.
+     * @param height The height of the area.
+     * @return A {@code String} instance, never {@code null}.
+     */
+    String compute(final PixelReader reader, final int x, final int y, final int width, final int height) {
+        final var length = 4 * width * height;
+        if (pixels.length < length) {
+            pixels = new byte[length];
+        }
+        reader.getPixels(x, y, width, height, PixelFormat.getByteBgraInstance(), pixels, 0, 4 * width);
+        // Images of different sizes may have the same pixel bytes.
+        for (int index = 0; index < 4; index++) {
+            size[index] = (byte) (width >>> (24 - 8 * index));
+            size[4 + index] = (byte) (height >>> (24 - 8 * index));
+        }
+        digest.reset();
+        digest.update(size);
+        digest.update(pixels, 0, length);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
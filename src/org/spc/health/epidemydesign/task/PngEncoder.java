@@ -0,0 +1,322 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign.task;
+
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Encodes 32-bit RGBA or 8-bit indexed PNG images straight from a {@code PixelReader}.
+ * <br/>Pixel, row and compression buffers are reused from one image to the next, which makes instances of this class
+ * unsafe to share between threads.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+final class PngEncoder {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final byte[] IHDR = "IHDR".getBytes(StandardCharsets.US_ASCII); // NOI18N.
+    private static final byte[] PLTE = "PLTE".getBytes(StandardCharsets.US_ASCII); // NOI18N.
+    private static final byte[] TRNS = "tRNS".getBytes(StandardCharsets.US_ASCII); // NOI18N.
+    private static final byte[] IDAT = "IDAT".getBytes(StandardCharsets.US_ASCII); // NOI18N.
+    private static final byte[] IEND = "IEND".getBytes(StandardCharsets.US_ASCII); // NOI18N.
+    private static final int BYTES_PER_PIXEL = 4;
+    private static final int BIT_DEPTH = 8;
+    private static final int COLOR_TYPE_INDEXED = 3;
+    private static final int COLOR_TYPE_RGBA = 6;
+    /**
+     * Number of basic filter types (none, sub, up, average and paeth).
+     */
+    private static final int FILTER_TYPES = 5;
+    private final PngFilter filter;
+    /**
+     * The color quantizer, {@code null} if images are written in RGBA.
+     */
+    private final ColorQuantizer quantizer;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] header = new byte[13];
+    private int[] pixels = new int[0];
+    private byte[] currentRow = new byte[0];
+    private byte[] previousRow = new byte[0];
+    /**
+     * Filtered rows, index is the filter type, each row starts with its filter type.
+     */
+    private final byte[][] filteredRows = new byte[FILTER_TYPES][0];
+    private byte[] palette = new byte[3 * ColorQuantizer.MAX_COLORS];
+    private byte[] transparency = new byte[ColorQuantizer.MAX_COLORS];
+    private byte[] compressed = new byte[8192];
+    private int compressedLength;
+    /**
+     * Number of bytes written for the current image.
+     */
+    private long encodedLength;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param compressionLevel The deflate compression level, from {@code 0} (no compression) to {@code 9} (best compression).
+     * @param filter           The row filter, rows of indexed images are not filtered.
+     * @param indexed          If {@code true}, images are reduced to a palette of 256 colors and written as indexed images.
+     */
+    PngEncoder(final int compressionLevel, final PngFilter filter, final boolean indexed) {
+        this.filter = filter;
+        quantizer = indexed ? new ColorQuantizer() : null;
+        deflater = new Deflater(compressionLevel);
+        // Filtered data compresses better with this strategy.
+        deflater.setStrategy(filter == PngFilter.NONE || indexed ? Deflater.DEFAULT_STRATEGY : Deflater.FILTERED);
+    }
+
+    /**
+     * Encodes an area of an image.
+     *
+     * @param reader The source pixel reader.
+     * @param x      The X coordinate of the area.
+     * @param y      The Y coordinate of the area.
+     * @param width  The width of the area.
+     * @param height The height of the area.
+     * @param output The target output, not closed by this method.
+     * @return The number of bytes written.
+     * @throws IOException In case of IO error.
+     */
+    long encode(final PixelReader reader, final int x, final int y, final int width, final int height, final OutputStream output) throws IOException {
+        final var size = width * height;
+        if (pixels.length < size) {
+            pixels = new int[size];
+        }
+        reader.getPixels(x, y, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+        return encode(pixels, width, height, output);
+    }
+
+    /**
+     * Encodes an image.
+     *
+     * @param argb   The non-premultiplied ARGB pixels of the image, row after row.
+     * @param width  The width of the image.
+     * @param height The height of the image.
+     * @param output The target output, not closed by this method.
+     * @return The number of bytes written.
+     * @throws IOException In case of IO error.
+     */
+    long encode(final int[] argb, final int width, final int height, final OutputStream output) throws IOException {
+        if (Objects.nonNull(quantizer)) {
+            encodeIndexed(argb, width, height, output);
+            return encodedLength;
+        }
+        final var rowLength = width * BYTES_PER_PIXEL;
+        if (currentRow.length < rowLength) {
+            currentRow = new byte[rowLength];
+            previousRow = new byte[rowLength];
+            for (int type = 0; type < FILTER_TYPES; type++) {
+                filteredRows[type] = new byte[rowLength + 1];
+            }
+        }
+        Arrays.fill(previousRow, 0, rowLength, (byte) 0);
+        deflater.reset();
+        compressedLength = 0;
+        for (int row = 0; row < height; row++) {
+            for (int column = 0, offset = row * width, index = 0; column < width; column++) {
+                final var pixel = argb[offset + column];
+                currentRow[index++] = (byte) (pixel >>> 16);
+                currentRow[index++] = (byte) (pixel >>> 8);
+                currentRow[index++] = (byte) pixel;
+                currentRow[index++] = (byte) (pixel >>> 24);
+            }
+            final var filtered = filterRow(rowLength);
+            deflateRow(filtered, rowLength + 1);
+            final var swap = previousRow;
+            previousRow = currentRow;
+            currentRow = swap;
+        }
+        finishDeflater();
+        // Write the file.
+        writeHeader(output, width, height, COLOR_TYPE_RGBA);
+        writeChunk(output, IDAT, compressed, compressedLength);
+        writeChunk(output, IEND, compressed, 0);
+        return encodedLength;
+    }
+
+    /**
+     * Encodes an image as an indexed image.
+     *
+     * @param argb   The non-premultiplied ARGB pixels of the image, row after row.
+     * @param width  The width of the image.
+     * @param height The height of the image.
+     * @param output The target output, not closed by this method.
+     * @throws IOException In case of IO error.
+     */
+    private void encodeIndexed(final int[] argb, final int width, final int height, final OutputStream output) throws IOException {
+        final var result = quantizer.quantize(argb, width * height);
+        final var colors = result.colors();
+        final var indices = result.indices();
+        // Rows start with their filter type.
+        if (currentRow.length < width + 1) {
+            currentRow = new byte[width + 1];
+        }
+        deflater.reset();
+        compressedLength = 0;
+        for (int row = 0; row < height; row++) {
+            currentRow[0] = 0;
+            System.arraycopy(indices, row * width, currentRow, 1, width);
+            deflateRow(currentRow, width + 1);
+        }
+        finishDeflater();
+        // Palette and transparency, translucent colors come first.
+        var transparencyLength = 0;
+        for (int index = 0; index < colors.length; index++) {
+            final var color = colors[index];
+            palette[3 * index] = (byte) (color >>> 16);
+            palette[3 * index + 1] = (byte) (color >>> 8);
+            palette[3 * index + 2] = (byte) color;
+            transparency[index] = (byte) (color >>> 24);
+            if ((color >>> 24) != 0xFF) {
+                transparencyLength = index + 1;
+            }
+        }
+        // Write the file.
+        writeHeader(output, width, height, COLOR_TYPE_INDEXED);
+        writeChunk(output, PLTE, palette, 3 * colors.length);
+        if (transparencyLength > 0) {
+            writeChunk(output, TRNS, transparency, transparencyLength);
+        }
+        writeChunk(output, IDAT, compressed, compressedLength);
+        writeChunk(output, IEND, compressed, 0);
+    }
+
+    private void writeHeader(final OutputStream output, final int width, final int height, final int colorType) throws IOException {
+        output.write(SIGNATURE);
+        encodedLength = SIGNATURE.length;
+        writeInt(header, 0, width);
+        writeInt(header, 4, height);
+        header[8] = BIT_DEPTH;
+        header[9] = (byte) colorType;
+        // Compression, filter and interlace methods.
+        header[10] = 0;
+        header[11] = 0;
+        header[12] = 0;
+        writeChunk(output, IHDR, header, header.length);
+    }
+
+    private void deflateRow(final byte[] row, final int length) {
+        deflater.setInput(row, 0, length);
+        while (!deflater.needsInput()) {
+            drainDeflater();
+        }
+    }
+
+    private void finishDeflater() {
+        deflater.finish();
+        while (!deflater.finished()) {
+            drainDeflater();
+        }
+    }
+
+    /**
+     * Filters the current row.
+     *
+     * @param rowLength Length of the row in bytes.
+     * @return The filtered row, starting with the filter type.
+     */
+    private byte[] filterRow(final int rowLength) {
+        return switch (filter) {
+            case NONE -> applyFilter(0, rowLength);
+            case SUB -> applyFilter(1, rowLength);
+            case UP -> applyFilter(2, rowLength);
+            case AVERAGE -> applyFilter(3, rowLength);
+            case PAETH -> applyFilter(4, rowLength);
+            case ADAPTIVE -> {
+                // Keep the filter with the smallest sum of absolute differences.
+                var best = applyFilter(0, rowLength);
+                var bestSum = sumOfAbsoluteValues(best, rowLength);
+                for (int type = 1; type < FILTER_TYPES; type++) {
+                    final var candidate = applyFilter(type, rowLength);
+                    final var sum = sumOfAbsoluteValues(candidate, rowLength);
+                    if (sum < bestSum) {
+                        best = candidate;
+                        bestSum = sum;
+                    }
+                }
+                yield best;
+            }
+        };
+    }
+
+    private byte[] applyFilter(final int type, final int rowLength) {
+        final var result = filteredRows[type];
+        result[0] = (byte) type;
+        for (int index = 0; index < rowLength; index++) {
+            final var raw = currentRow[index] & 0xFF;
+            final var left = (index >= BYTES_PER_PIXEL) ? currentRow[index - BYTES_PER_PIXEL] & 0xFF : 0;
+            final var up = previousRow[index] & 0xFF;
+            final var upLeft = (index >= BYTES_PER_PIXEL) ? previousRow[index - BYTES_PER_PIXEL] & 0xFF : 0;
+            final var predictor = switch (type) {
+                case 1 -> left;
+                case 2 -> up;
+                case 3 -> (left + up) >>> 1;
+                case 4 -> paeth(left, up, upLeft);
+                default -> 0;
+            };
+            result[index + 1] = (byte) (raw - predictor);
+        }
+        return result;
+    }
+
+    private static int paeth(final int left, final int up, final int upLeft) {
+        final var estimate = left + up - upLeft;
+        final var distanceLeft = Math.abs(estimate - left);
+        final var distanceUp = Math.abs(estimate - up);
+        final var distanceUpLeft = Math.abs(estimate - upLeft);
+        if (distanceLeft <= distanceUp && distanceLeft <= distanceUpLeft) {
+            return left;
+        }
+        return (distanceUp <= distanceUpLeft) ? up : upLeft;
+    }
+
+    private static long sumOfAbsoluteValues(final byte[] row, final int rowLength) {
+        long result = 0;
+        for (int index = 1; index <= rowLength; index++) {
+            result += Math.abs(row[index]);
+        }
+        return result;
+    }
+
+    private void drainDeflater() {
+        if (compressedLength == compressed.length) {
+            compressed = Arrays.copyOf(compressed, 2 * compressed.length);
+        }
+        compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+    }
+
+    private void writeChunk(final OutputStream output, final byte[] type, final byte[] data, final int length) throws IOException {
+        final var buffer = new byte[4];
+        writeInt(buffer, 0, length);
+        output.write(buffer);
+        output.write(type);
+        output.write(data, 0, length);
+        crc.reset();
+        crc.update(type);
+        crc.update(data, 0, length);
+        writeInt(buffer, 0, (int) crc.getValue());
+        output.write(buffer);
+        // Length, type, data and CRC.
+        encodedLength += 12 + length;
+    }
+
+    private static void writeInt(final byte[] buffer, final int offset, final int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+}
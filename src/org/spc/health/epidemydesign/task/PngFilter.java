@@ -0,0 +1,16 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign.task;
+
+/**
+ * Row filters of the PNG format.
+ * <br/>Filters make the pixel data easier to compress; trying all of them on each row ({@code ADAPTIVE}) gives smaller files at the cost of encoding time.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public enum PngFilter {
+    NONE, SUB, UP, AVERAGE, PAETH, ADAPTIVE
+}
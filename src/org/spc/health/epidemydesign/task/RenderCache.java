@@ -0,0 +1,180 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign.task;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Objects;
+import java.util.Properties;
+
+/**
+ * Persistent cache of rendered images.
+ * <br/>Each entry is keyed by a hash of the template content and of the values used to render an image,
+ * and points to the file the image was last written to.
+ * <br/>A cached file is only reused if its size and modification date did not change since it was written.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+final class RenderCache {
+
+    private static final String ALGORITHM = "SHA-256"; // NOI18N.
+    private final File file;
+    private final Properties content = new Properties();
+    private byte[] templateDigest;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param file The file in which the cache is persisted.
+     */
+    RenderCache(final File file) {
+        this.file = file;
+    }
+
+    /**
+     * Loads the cache content.
+     *
+     * @throws IOException In case of IO error.
+     */
+    void load() throws IOException {
+        content.clear();
+        if (file.exists()) {
+            try (final var input = new FileInputStream(file)) {
+                content.load(input);
+            }
+        }
+    }
+
+    /**
+     * Hashes the template, keys computed afterward depend on it.
+     *
+     * @param fxmlFile The template FXML file.
+     * @param cssFile  The template CSS file.
+     * @throws IOException In case of IO error.
+     */
+    void setTemplate(final File fxmlFile, final File cssFile) throws IOException {
+        final var digest = createDigest();
+        digest.update(Files.readAllBytes(fxmlFile.toPath()));
+        digest.update((byte) 0);
+        digest.update(Files.readAllBytes(cssFile.toPath()));
+        templateDigest = digest.digest();
+    }
+
+    /**
+     * Computes the cache key of an entry.
+     *
+     * @param entry   The entry.
+     * @param variant Other values that affect the output (ie: format or options).
+     * @return A {@code String} instance, never {@code null}.
+     */
+    String computeKey(final GenerationEntry entry, final String variant) {
+        final var digest = createDigest();
+        digest.update(templateDigest);
+        for (final var value : new String[]{entry.infection().getName(), entry.infection().getFileName(), entry.state().getName(), variant}) {
+            digest.update((byte) 0);
+            digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Restores a cached image into the target file.
+     *
+     * @param key    The cache key.
+     * @param target The target file.
+     * @return {@code True} if the target file now holds the cached image, {@code false} otherwise.
+     * @throws IOException In case of IO error.
+     */
+    synchronized boolean restore(final String key, final File target) throws IOException {
+        final var value = content.getProperty(key);
+        if (Objects.isNull(value)) {
+            return false;
+        }
+        final var cached = parseValue(value);
+        if (Objects.isNull(cached) || !isValid(cached)) {
+            content.remove(key);
+            return false;
+        }
+        if (!cached.file().equals(target.getAbsoluteFile())) {
+            Files.copy(cached.file().toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return true;
+    }
+
+    /**
+     * Records a newly written image.
+     * <br/>This method may be invoked from any thread.
+     *
+     * @param key    The cache key.
+     * @param output The file the image was written to.
+     */
+    synchronized void store(final String key, final File output) {
+        final var absoluteFile = output.getAbsoluteFile();
+        content.setProperty(key, String.format("%d|%d|%s", absoluteFile.length(), absoluteFile.lastModified(), absoluteFile.getPath())); // NOI18N.
+    }
+
+    /**
+     * Saves the cache, entries whose file were deleted or modified are dropped.
+     *
+     * @throws IOException In case of IO error.
+     */
+    synchronized void save() throws IOException {
+        content.stringPropertyNames().forEach(key -> {
+            final var cached = parseValue(content.getProperty(key));
+            if (Objects.isNull(cached) || !isValid(cached)) {
+                content.remove(key);
+            }
+        });
+        try (final var output = new FileOutputStream(file)) {
+            content.store(output, null);
+        }
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            // SHA-256 is available on all Java platforms.
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static CachedFile parseValue(final String value) {
+        final var tokens = value.split("\\|", 3); // NOI18N.
+        if (tokens.length != 3) {
+            return null;
+        }
+        try {
+            return new CachedFile(Long.parseLong(tokens[0]), Long.parseLong(tokens[1]), new File(tokens[2]));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    private static boolean isValid(final CachedFile cached) {
+        final var file = cached.file();
+        return file.isFile() && file.length() == cached.size() && file.lastModified() == cached.lastModified();
+    }
+
+    /**
+     * A file referenced by the cache.
+     *
+     * @param size         Size of the file when it was written.
+     * @param lastModified Modification date of the file when it was written.
+     * @param file         The file.
+     * @author Fabrice Bouyé (fabriceb@spc.int)
+     */
+    private record CachedFile(long size, long lastModified, File file) {
+    }
+}
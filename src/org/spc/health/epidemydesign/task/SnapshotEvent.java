@@ -0,0 +1,33 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign.task;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event emitted for each snapshot taken on the JavaFX Application Thread.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+@Name("org.spc.health.epidemydesign.Snapshot") // NOI18N.
+@Label("Snapshot") // NOI18N.
+@Category({"Epidemy Design", "Generation"}) // NOI18N.
+@Description("A snapshot of one or several images.") // NOI18N.
+final class SnapshotEvent extends Event {
+
+    @Label("Images") // NOI18N.
+    int images;
+
+    @Label("FX Thread Wait") // NOI18N.
+    @Description("Time spent waiting for the JavaFX Application Thread before the snapshot.") // NOI18N.
+    @Timespan
+    long fxThreadWait;
+}
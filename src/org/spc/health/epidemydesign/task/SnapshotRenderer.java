@@ -0,0 +1,147 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign.task;
+
+import javafx.css.PseudoClass;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.Group;
+import javafx.scene.Scene;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.control.Label;
+import javafx.scene.image.WritableImage;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+import javafx.scene.transform.Transform;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Renders infection/state pairs one at a time.
+ * <br/>The template node stays in a single offscreen scene and is rendered into recycled images,
+ * so that rendering an image only changes the label text and the state pseudo-class.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+final class SnapshotRenderer {
+
+    private final Region node;
+    private final int scale;
+    /**
+     * The stylesheet to use, {@code null} to keep the stylesheets of the node.
+     */
+    private volatile String stylesheet;
+    private String appliedStylesheet;
+    private final Label label;
+    private final Pane root = new Pane();
+    private final SnapshotParameters snapshotParameters = new SnapshotParameters();
+    /**
+     * Images that were written by the workers and can be rendered into again.
+     */
+    private final Queue<WritableImage> freeImages = new ConcurrentLinkedQueue<>();
+    private Scene scene;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param node  The template node.
+     * @param scale The scale at which the node is rendered.
+     */
+    SnapshotRenderer(final Region node, final int scale) {
+        this.node = node;
+        this.scale = scale;
+        label = (Label) node.lookup(".label"); // NOI18N.
+        // The node is positioned manually.
+        node.setManaged(false);
+        root.setStyle("-fx-background-color: transparent;"); // NOI18N.
+        root.getChildren().add(node);
+        snapshotParameters.setFill(Color.TRANSPARENT);
+        snapshotParameters.setTransform(Transform.scale(scale, scale));
+    }
+
+    /**
+     * Sets the stylesheet used by the next renders.
+     * <br/>The node graph is kept, only its style changes.
+     *
+     * @param stylesheet URL of the stylesheet.
+     */
+    void setStylesheet(final String stylesheet) {
+        this.stylesheet = stylesheet;
+    }
+
+    /**
+     * Renders an entry.
+     * <br/>This method must be invoked on the JavaFX Application Thread.
+     *
+     * @param entry The entry.
+     * @return A {@code WritableImage} instance, never {@code null}, to be given back with {@link #recycle(WritableImage)} once written.
+     */
+    WritableImage render(final GenerationEntry entry) {
+        if (Objects.isNull(scene)) {
+            scene = new Scene(new Group(root));
+            scene.setFill(Color.TRANSPARENT);
+        }
+        final var currentStylesheet = stylesheet;
+        if (Objects.nonNull(currentStylesheet) && !currentStylesheet.equals(appliedStylesheet)) {
+            node.getStylesheets().setAll(currentStylesheet);
+            appliedStylesheet = currentStylesheet;
+        }
+        // Change the label.
+        if (Objects.nonNull(label)) {
+            label.setText(entry.infection().getName());
+        }
+        // Sets the pseudo class.
+        final var pseudoClass = PseudoClass.getPseudoClass(entry.state().getName());
+        node.pseudoClassStateChanged(pseudoClass, true);
+        try {
+            root.applyCss();
+            final var width = (int) Math.ceil(node.prefWidth(-1));
+            final var height = (int) Math.ceil(node.prefHeight(width));
+            node.resizeRelocate(0, 0, width, height);
+            node.layout();
+            // The viewport is expressed after the scale is applied.
+            final var imageWidth = Math.max(1, width * scale);
+            final var imageHeight = Math.max(1, height * scale);
+            final var viewport = snapshotParameters.getViewport();
+            if (Objects.isNull(viewport) || viewport.getWidth() != imageWidth || viewport.getHeight() != imageHeight) {
+                snapshotParameters.setViewport(new Rectangle2D(0, 0, imageWidth, imageHeight));
+            }
+            return root.snapshot(snapshotParameters, takeImage(imageWidth, imageHeight));
+        } finally {
+            // Unsets the pseudo class.
+            node.pseudoClassStateChanged(pseudoClass, false);
+        }
+    }
+
+    /**
+     * Gives back an image once it has been written.
+     * <br/>This method may be invoked from any thread.
+     *
+     * @param image The image.
+     */
+    void recycle(final WritableImage image) {
+        freeImages.offer(image);
+    }
+
+    /**
+     * Gets a free image of the given size.
+     * <br/>Free images of a different size are dropped.
+     *
+     * @param width  The width of the image.
+     * @param height The height of the image.
+     * @return A {@code WritableImage} instance, never {@code null}.
+     */
+    private WritableImage takeImage(final int width, final int height) {
+        for (var image = freeImages.poll(); Objects.nonNull(image); image = freeImages.poll()) {
+            if ((int) image.getWidth() == width && (int) image.getHeight() == height) {
+                return image;
+            }
+        }
+        return new WritableImage(width, height);
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign.task;
+
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelReader;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Packs generated images into a single sprite sheet.
+ * <br/>The sheet is written along with a JSON index and a CSS stylesheet that give the offset and size of each sprite.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+final class SpriteSheet {
+
+    /**
+     * Transparent gap between two sprites, prevents neighbor sprites from bleeding when the sheet is scaled.
+     */
+    private static final int GAP = 1;
+    private final String name;
+    private final PngEncoder encoder;
+    /**
+     * Sprites sorted by name, the sheet layout does not depend on the order in which images are added.
+     */
+    private final Map<String, Sprite> sprites = new TreeMap<>();
+    /**
+     * Sprites that share the pixels of another sprite, key is the name of the alias, value the name of the sprite.
+     */
+    private final Map<String, String> aliases = new TreeMap<>();
+
+    /**
+     * Creates a new instance.
+     *
+     * @param name    Base name of the output files.
+     * @param encoder The encoder used to write the sheet.
+     */
+    SpriteSheet(final String name, final PngEncoder encoder) {
+        this.name = name;
+        this.encoder = encoder;
+    }
+
+    /**
+     * Adds a sprite to this sheet.
+     * <br/>This method may be invoked from any thread.
+     *
+     * @param spriteName The name of the sprite.
+     * @param reader     The source pixel reader.
+     * @param x          The X coordinate of the sprite in the source.
+     * @param y          The Y coordinate of the sprite in the source.
+     * @param width      The width of the sprite.
+     * @param height     The height of the sprite.
+     */
+    void add(final String spriteName, final PixelReader reader, final int x, final int y, final int width, final int height) {
+        final var pixels = new int[width * height];
+        reader.getPixels(x, y, width, height, PixelFormat.getIntArgbInstance(), pixels, 0, width);
+        synchronized (this) {
+            sprites.put(spriteName, new Sprite(spriteName, pixels, width, height));
+        }
+    }
+
+    /**
+     * Adds a sprite to this sheet.
+     * <br/>This method may be invoked from any thread.
+     *
+     * @param spriteName The name of the sprite.
+     * @param argb       The non-premultiplied ARGB pixels of the sprite, row after row; they are copied.
+     * @param width      The width of the sprite.
+     * @param height     The height of the sprite.
+     */
+    void add(final String spriteName, final int[] argb, final int width, final int height) {
+        final var pixels = Arrays.copyOf(argb, width * height);
+        synchronized (this) {
+            sprites.put(spriteName, new Sprite(spriteName, pixels, width, height));
+        }
+    }
+
+    /**
+     * Adds a sprite that is identical to another sprite.
+     * <br/>The alias is listed in the indexes with the position of the other sprite, its pixels are not packed again.
+     * <br/>This method may be invoked from any thread.
+     *
+     * @param spriteName   The name of the alias.
+     * @param originalName The name of the other sprite.
+     */
+    synchronized void addAlias(final String spriteName, final String originalName) {
+        aliases.put(spriteName, originalName);
+    }
+
+    /**
+     * Packs and writes the sheet, its JSON index and its CSS stylesheet.
+     *
+     * @param sink The target sink.
+     * @throws IOException In case of IO error.
+     */
+    synchronized void write(final OutputSink sink) throws IOException {
+        final var sprites = layout();
+        final var width = sprites.stream().mapToInt(sprite -> sprite.x + sprite.width).max().orElse(1);
+        final var height = sprites.stream().mapToInt(sprite -> sprite.y + sprite.height).max().orElse(1);
+        // Sprites do not overlap, rows are copied without blending.
+        final var sheet = new int[width * height];
+        sprites.forEach(sprite -> {
+            for (int row = 0; row < sprite.height; row++) {
+                System.arraycopy(sprite.pixels, row * sprite.width, sheet, (sprite.y + row) * width + sprite.x, sprite.width);
+            }
+        });
+        final var imageFileName = String.format("%s.png", name); // NOI18N.
+        sink.write(imageFileName, output -> encoder.encode(sheet, width, height, output));
+        final var index = new ArrayList<>(sprites);
+        aliases.forEach((spriteName, originalName) -> {
+            final var original = this.sprites.get(originalName);
+            final var alias = new Sprite(spriteName, original.pixels, original.width, original.height);
+            alias.x = original.x;
+            alias.y = original.y;
+            index.add(alias);
+        });
+        index.sort(Comparator.comparing(sprite -> sprite.name));
+        sink.write(String.format("%s.json", name), output -> writeJSONIndex(output, imageFileName, width, height, index)); // NOI18N.
+        sink.write(String.format("%s.css", name), output -> writeCSSIndex(output, imageFileName, index)); // NOI18N.
+    }
+
+    /**
+     * Computes the position of each sprite in the sheet.
+     * <br/>Sprites are sorted by decreasing height and placed on shelves, the width of the sheet is chosen to be roughly square.
+     *
+     * @return A {@code List<Sprite>} instance, never {@code null}.
+     */
+    private List<Sprite> layout() {
+        final var result = new ArrayList<>(sprites.values());
+        result.sort(Comparator.<Sprite>comparingInt(sprite -> sprite.height).reversed()
+                .thenComparing(sprite -> sprite.name));
+        final var area = result.stream()
+                .mapToLong(sprite -> (long) (sprite.width + GAP) * (sprite.height + GAP))
+                .sum();
+        final var maxWidth = result.stream().mapToInt(sprite -> sprite.width).max().orElse(1);
+        final var columns = Math.max(1, (int) Math.ceil(Math.sqrt(area) / (maxWidth + GAP)));
+        final var sheetWidth = columns * (maxWidth + GAP);
+        int x = 0;
+        int y = 0;
+        int shelfHeight = 0;
+        for (final var sprite : result) {
+            if (x > 0 && x + sprite.width > sheetWidth) {
+                x = 0;
+                y += shelfHeight + GAP;
+                shelfHeight = 0;
+            }
+            sprite.x = x;
+            sprite.y = y;
+            x += sprite.width + GAP;
+            shelfHeight = Math.max(shelfHeight, sprite.height);
+        }
+        return result;
+    }
+
+    private void writeJSONIndex(final OutputStream output, final String imageFileName, final int width, final int height, final List<Sprite> sprites) {
+        // The writer is flushed but not closed, the sink owns the output.
+        final var writer = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        writer.println("{"); // NOI18N.
+        writer.printf("  \"image\": \"%s\",%n", escapeJSON(imageFileName)); // NOI18N.
+        writer.printf("  \"width\": %d,%n", width); // NOI18N.
+        writer.printf("  \"height\": %d,%n", height); // NOI18N.
+        writer.println("  \"sprites\": {"); // NOI18N.
+        for (int index = 0; index < sprites.size(); index++) {
+            final var sprite = sprites.get(index);
+            final var separator = (index < sprites.size() - 1) ? "," : ""; // NOI18N.
+            writer.printf("    \"%s\": {\"x\": %d, \"y\": %d, \"width\": %d, \"height\": %d}%s%n", // NOI18N.
+                    escapeJSON(sprite.name), sprite.x, sprite.y, sprite.width, sprite.height, separator);
+        }
+        writer.println("  }"); // NOI18N.
+        writer.println("}"); // NOI18N.
+        writer.flush();
+    }
+
+    private void writeCSSIndex(final OutputStream output, final String imageFileName, final List<Sprite> sprites) {
+        // The writer is flushed but not closed, the sink owns the output.
+        final var writer = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+        writer.println(".sprite {"); // NOI18N.
+        writer.printf("  background-image: url(\"%s\");%n", imageFileName); // NOI18N.
+        writer.println("  background-repeat: no-repeat;"); // NOI18N.
+        writer.println("  display: inline-block;"); // NOI18N.
+        writer.println("}"); // NOI18N.
+        sprites.forEach(sprite -> {
+            writer.printf(".sprite-%s {%n", escapeCSS(sprite.name)); // NOI18N.
+            writer.printf("  background-position: %dpx %dpx;%n", -sprite.x, -sprite.y); // NOI18N.
+            writer.printf("  width: %dpx;%n", sprite.width); // NOI18N.
+            writer.printf("  height: %dpx;%n", sprite.height); // NOI18N.
+            writer.println("}"); // NOI18N.
+        });
+        writer.flush();
+    }
+
+    private static String escapeJSON(final String value) {
+        final var builder = new StringBuilder(value.length());
+        value.chars().forEach(c -> {
+            switch (c) {
+                case '"', '\\' -> builder.append('\\').append((char) c);
+                default -> {
+                    if (c < 0x20) {
+                        builder.append(String.format("\\u%04x", c)); // NOI18N.
+                    } else {
+                        builder.append((char) c);
+                    }
+                }
+            }
+        });
+        return builder.toString();
+    }
+
+    private static String escapeCSS(final String value) {
+        final var builder = new StringBuilder(value.length());
+        value.chars().forEach(c -> {
+            if (Character.isLetterOrDigit(c) || c == '-' || c == '_') {
+                builder.append((char) c);
+            } else {
+                builder.append('\\').append((char) c);
+            }
+        });
+        return builder.toString();
+    }
+
+    /**
+     * A sprite and its position in the sheet.
+     *
+     * @author Fabrice Bouyé (fabriceb@spc.int)
+     */
+    private static final class Sprite {
+
+        private final String name;
+        private final int[] pixels;
+        private final int width;
+        private final int height;
+        private int x;
+        private int y;
+
+        Sprite(final String name, final int[] pixels, final int width, final int height) {
+            this.name = name;
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign.task;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Streams all files into a POSIX (ustar) TAR archive.
+ * <br/>Linked files are stored as hard link entries.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+final class TarSink extends ArchiveSink {
+
+    private static final int BLOCK_SIZE = 512;
+    private static final int NAME_LENGTH = 100;
+    private static final byte REGULAR_FILE = '0';
+    private static final byte HARD_LINK = '1';
+    private final byte[] header = new byte[BLOCK_SIZE];
+    private final long modificationTime = System.currentTimeMillis() / 1000;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param file The archive file.
+     * @throws IOException In case of IO error.
+     */
+    TarSink(final File file) throws IOException {
+        super(file);
+    }
+
+    @Override
+    protected void writeEntry(final String name, final ByteArrayOutputStream content) throws IOException {
+        writeHeader(name, content.size(), REGULAR_FILE, null);
+        content.writeTo(output);
+        final var padding = (BLOCK_SIZE - content.size() % BLOCK_SIZE) % BLOCK_SIZE;
+        output.write(new byte[padding]);
+    }
+
+    @Override
+    public synchronized void link(final String name, final String target) throws IOException {
+        writeHeader(name, 0, HARD_LINK, target);
+    }
+
+    /**
+     * Writes the header of an entry.
+     *
+     * @param name     The name of the entry.
+     * @param size     The size of the entry.
+     * @param type     The type of the entry.
+     * @param linkName The name of the linked entry, {@code null} if the entry is not a link.
+     * @throws IOException In case of IO error.
+     */
+    private void writeHeader(final String name, final long size, final byte type, final String linkName) throws IOException {
+        Arrays.fill(header, (byte) 0);
+        putName(0, name);
+        putOctal(100, 8, 0644);
+        putOctal(108, 8, 0);
+        putOctal(116, 8, 0);
+        putOctal(124, 12, size);
+        putOctal(136, 12, modificationTime);
+        header[156] = type;
+        if (Objects.nonNull(linkName)) {
+            putName(157, linkName);
+        }
+        putString(257, "ustar\0"); // NOI18N.
+        putString(263, "00"); // NOI18N.
+        // The checksum is computed with its own field filled with spaces.
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        var checksum = 0;
+        for (final var value : header) {
+            checksum += value & 0xFF;
+        }
+        putOctal(148, 7, checksum);
+        output.write(header);
+    }
+
+    private void putName(final int offset, final String name) throws IOException {
+        final var bytes = name.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > NAME_LENGTH) {
+            throw new IOException(String.format("Name too long for a TAR archive: %s", name)); // NOI18N.
+        }
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try (output) {
+            // End of archive.
+            output.write(new byte[2 * BLOCK_SIZE]);
+        }
+    }
+
+    /**
+     * Puts an octal number, zero padded and followed by a {@code NUL}.
+     *
+     * @param offset The offset of the field.
+     * @param length The length of the field.
+     * @param value  The value.
+     */
+    private void putOctal(final int offset, final int length, final long value) {
+        final var text = String.format("%0" + (length - 1) + "o", value); // NOI18N.
+        putString(offset, text);
+        header[offset + length - 1] = 0;
+    }
+
+    private void putString(final int offset, final String value) {
+        final var bytes = value.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, header, offset, bytes.length);
+    }
+}
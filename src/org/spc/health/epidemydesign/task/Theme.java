@@ -0,0 +1,30 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign.task;
+
+import java.io.File;
+import java.util.Objects;
+
+/**
+ * A visual theme of the catalogue.
+ *
+ * @param name    Name of the theme, also the name of the output subfolder.
+ * @param cssFile The theme stylesheet.
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+public record Theme(String name, File cssFile) {
+
+    /**
+     * Creates a new instance.
+     *
+     * @param name    Name of the theme, also the name of the output subfolder.
+     * @param cssFile The theme stylesheet.
+     */
+    public Theme {
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(cssFile);
+    }
+}
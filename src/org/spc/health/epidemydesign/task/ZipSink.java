@@ -0,0 +1,95 @@
+/*
+ Copyright - Pacific Community
+ Droit de copie - Communauté du Pacifique
+ http://www.spc.int/
+*/
+package org.spc.health.epidemydesign.task;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams all files into a ZIP archive.
+ * <br/>PNG files are already compressed and are stored as they are, other files are deflated.
+ * <br/>ZIP archives have no links, linked files are listed in an {@code aliases.json} manifest written at the end of the archive.
+ *
+ * @author Fabrice Bouyé (fabriceb@spc.int)
+ */
+final class ZipSink extends ArchiveSink {
+
+    private static final String MANIFEST_NAME = "aliases.json"; // NOI18N.
+    private final ZipOutputStream zipOutput;
+    private final CRC32 crc = new CRC32();
+    /**
+     * Linked files, key is the name of the file, value the name of the file it shares its content with.
+     */
+    private final Map<String, String> aliases = new TreeMap<>();
+
+    /**
+     * Creates a new instance.
+     *
+     * @param file The archive file.
+     * @throws IOException In case of IO error.
+     */
+    ZipSink(final File file) throws IOException {
+        super(file);
+        zipOutput = new ZipOutputStream(output);
+    }
+
+    @Override
+    protected void writeEntry(final String name, final ByteArrayOutputStream content) throws IOException {
+        final var entry = new ZipEntry(name);
+        if (name.endsWith(".png")) { // NOI18N.
+            final var bytes = content.toByteArray();
+            crc.reset();
+            crc.update(bytes);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(bytes.length);
+            entry.setCompressedSize(bytes.length);
+            entry.setCrc(crc.getValue());
+            zipOutput.putNextEntry(entry);
+            zipOutput.write(bytes);
+        } else {
+            zipOutput.putNextEntry(entry);
+            content.writeTo(zipOutput);
+        }
+        zipOutput.closeEntry();
+    }
+
+    @Override
+    public synchronized void link(final String name, final String target) {
+        aliases.put(name, target);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try (zipOutput) {
+            if (!aliases.isEmpty()) {
+                zipOutput.putNextEntry(new ZipEntry(MANIFEST_NAME));
+                final var writer = new PrintWriter(new OutputStreamWriter(zipOutput, StandardCharsets.UTF_8));
+                writer.println("{"); // NOI18N.
+                var remaining = aliases.size();
+                for (final var alias : aliases.entrySet()) {
+                    final var separator = (--remaining > 0) ? "," : ""; // NOI18N.
+                    writer.printf("  \"%s\": \"%s\"%s%n", escapeJSON(alias.getKey()), escapeJSON(alias.getValue()), separator); // NOI18N.
+                }
+                writer.println("}"); // NOI18N.
+                writer.flush();
+                zipOutput.closeEntry();
+            }
+        }
+    }
+
+    private static String escapeJSON(final String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\""); // NOI18N.
+    }
+}